@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The frames of record2, optionally upscaled, and the input of every stage prepared from them.
+ *
+ * JMH does not run benchmarks from the default package, where the detector lives, so the
+ * benchmarks in the benchmarks package look each stage up here by name. Every call of a stage
+ * works on the next frame of the recording.
+ */
+public class StageFixture {
+
+    public static final String RECORD = "record2";
+
+    final FrameGeometry geometry;
+    final int scale;
+    private final int[][] frames;
+    private final PackedImage[] images;
+    private final PackedImage[] medians;
+    private final PackedImage[] binaries;
+    private final BinaryMask[] masks;
+    private final BinaryMask[] filtered;
+    private final DetectionContext context;
+    private int next;
+
+    // scale 1 is the recording as it is, larger scales repeat every pixel scale x scale times
+    public StageFixture(int scale) throws IOException {
+        this.scale = scale;
+        this.geometry = new FrameGeometry(Main.WIDTH * scale, Main.HEIGHT * scale);
+        List<int[]> loaded = new ArrayList<>();
+        try (InputStream inputStream = Main.class.getResourceAsStream(RECORD);
+             RecordTokenizer tokenizer = new RecordTokenizer(inputStream)) {
+            int[] data = new int[FrameGeometry.DEFAULT.getFrameSize()];
+            while (tokenizer.nextFrame(data)) {
+                loaded.add(upscale(data, scale));
+            }
+        }
+        int count = loaded.size();
+        this.frames = loaded.toArray(new int[count][]);
+        this.images = new PackedImage[count];
+        this.medians = new PackedImage[count];
+        this.binaries = new PackedImage[count];
+        this.masks = new BinaryMask[count];
+        this.filtered = new BinaryMask[count];
+        for (int i = 0; i < count; ++i) {
+            images[i] = new PackedImage(geometry.width, geometry.height);
+            Main.getImage(frames[i], images[i]);
+            medians[i] = new PackedImage(geometry.width, geometry.height);
+            Main.getMedianImage(images[i], medians[i]);
+            binaries[i] = new PackedImage(geometry.width, geometry.height);
+            Main.getBinaryImage(medians[i], Main.Channel.RED, binaries[i]);
+            masks[i] = new BinaryMask(geometry.width, geometry.height);
+            Main.getBinaryMask(medians[i], Main.Channel.RED, masks[i]);
+            filtered[i] = new BinaryMask(geometry.width, geometry.height);
+            Main.granularityFilter(masks[i], filtered[i]);
+        }
+        this.context = new DetectionContext(geometry);
+    }
+
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    public Supplier<Object> stage(String name) {
+        PackedImage image = new PackedImage(geometry.width, geometry.height);
+        BinaryMask mask = new BinaryMask(geometry.width, geometry.height);
+        switch (name) {
+            case "getImage":
+                return () -> {
+                    Main.getImage(frames[next()], image);
+                    return image;
+                };
+            case "getMedianImage":
+                return () -> {
+                    Main.getMedianImage(images[next()], image);
+                    return image;
+                };
+            case "getAverageImage":
+                return () -> {
+                    Main.getAverageImage(images[next()], image);
+                    return image;
+                };
+            case "getBinaryImage":
+                return () -> {
+                    Main.getBinaryImage(medians[next()], Main.Channel.RED, image);
+                    return image;
+                };
+            case "getBinaryMask":
+                return () -> {
+                    Main.getBinaryMask(medians[next()], Main.Channel.RED, mask);
+                    return mask;
+                };
+            case "granularityFilter":
+                return () -> {
+                    Main.granularityFilter(masks[next()], mask);
+                    return mask;
+                };
+            case "granularityFilterImage":
+                return () -> {
+                    Main.granularityFilter(binaries[next()], Main.Channel.RED, image);
+                    return image;
+                };
+            case "getDistributionImage":
+                return () -> {
+                    Main.getDistributionImage(binaries[next()], Main.Channel.RED, image);
+                    return image;
+                };
+            case "getRectsForImage":
+                // the search clears the mask as it goes, so it includes copying the mask
+                return () -> {
+                    mask.copyFrom(filtered[next()]);
+                    return Main.getRectsForImage(context, mask, Main.DetectionStrategy.DISTRIBUTION);
+                };
+            case "getRectsForImagePyramid":
+                PyramidDetector pyramid = new PyramidDetector(geometry);
+                return () -> {
+                    mask.copyFrom(filtered[next()]);
+                    return pyramid.detectRects(context, mask, Main.DetectionStrategy.DISTRIBUTION);
+                };
+            case "detect":
+                return () -> Main.detect(context, frames[next()], Main.Channel.RED,
+                        Main.DetectionStrategy.DISTRIBUTION);
+            default:
+                throw new IllegalArgumentException("Unknown stage " + name);
+        }
+    }
+
+    // The checkRecord loop over the whole recording without the printing, returns the rects found.
+    // options is "none", "tiles" to split the filters of every frame into bands or "pyramid" for the
+    // coarse to fine search
+    public Supplier<Object> checkRecord(String strategy, String options) {
+        Main.DetectionStrategy detectionStrategy = Main.DetectionStrategy.valueOf(strategy);
+        DetectionContext context = new DetectionContext(geometry);
+        switch (options) {
+            case "none":
+                break;
+            case "tiles":
+                context.tiles = new TiledExecutor();
+                break;
+            case "pyramid":
+                context.pyramid = new PyramidDetector(geometry);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown options " + options);
+        }
+        return () -> {
+            int rects = 0;
+            for (int[] frame : frames) {
+                rects += Main.detect(context, frame, Main.Channel.RED, detectionStrategy).size();
+            }
+            return rects;
+        };
+    }
+
+    private int next() {
+        int frame = next;
+        next = frame + 1 == frames.length ? 0 : frame + 1;
+        return frame;
+    }
+
+    private static int[] upscale(int[] data, int scale) {
+        int width = Main.WIDTH * scale;
+        int height = Main.HEIGHT * scale;
+        int[] scaled = new int[2 * width * height];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int source = 2 * ((y / scale) * Main.WIDTH + x / scale);
+                int target = 2 * (y * width + x);
+                scaled[target] = data[source];
+                scaled[target + 1] = data[source + 1];
+            }
+        }
+        return scaled;
+    }
+
+}
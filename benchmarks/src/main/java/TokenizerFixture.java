@@ -0,0 +1,67 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Scanner;
+import java.util.function.Supplier;
+
+/**
+ * An in-memory copy of a text record, so disk speed does not count, and the parsers to read it
+ * with. Used by TokenizerBenchmark through Fixtures, like StageFixture.
+ */
+public class TokenizerFixture {
+
+    final byte[] record;
+    private final int[] data = new int[FrameGeometry.DEFAULT.getFrameSize()];
+
+    public TokenizerFixture(String filename) throws IOException {
+        try (InputStream inputStream = Main.class.getResourceAsStream(filename)) {
+            if (inputStream == null) {
+                throw new IOException("No record " + filename);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[1 << 16];
+            int read;
+            while ((read = inputStream.read(chunk)) > 0) {
+                out.write(chunk, 0, read);
+            }
+            this.record = out.toByteArray();
+        }
+    }
+
+    // One pass over the whole record, returns the frames read. parser is "tokenizer" for
+    // RecordTokenizer or "scanner" for the old Scanner based loop
+    public Supplier<Object> parse(String parser) {
+        switch (parser) {
+            case "tokenizer":
+                return () -> {
+                    int frames = 0;
+                    try (RecordTokenizer tokenizer = new RecordTokenizer(new ByteArrayInputStream(record))) {
+                        while (tokenizer.nextFrame(data)) {
+                            frames++;
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return frames;
+                };
+            case "scanner":
+                return () -> {
+                    int frames = 0;
+                    Scanner scanner = new Scanner(new ByteArrayInputStream(record));
+                    int index = 0;
+                    while (scanner.hasNextInt()) {
+                        data[index++] = scanner.nextInt();
+                        if (index == data.length) {
+                            index = 0;
+                            frames++;
+                        }
+                    }
+                    return frames;
+                };
+            default:
+                throw new IllegalArgumentException("Unknown parser " + parser);
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for the checkRecord loop over all frames of record2, without the printing, at 40x40
+ * and upscaled to 160x160 and 640x640. The options switch on the optional paths of the
+ * detector, see StageFixture.checkRecord.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class CheckRecordBenchmark {
+
+    @Param({"1", "4", "16"})
+    int scale;
+
+    @Param({"DISTRIBUTION", "CONNECTED_COMPONENTS"})
+    String strategy;
+
+    @Param({"none", "tiles", "pyramid"})
+    String options;
+
+    private Supplier<Object> run;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        run = Fixtures.checkRecord(scale, strategy, options);
+    }
+
+    @Benchmark
+    public Object checkRecord() {
+        return run.get();
+    }
+
+}
@@ -0,0 +1,40 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Reflective access to StageFixture and TokenizerFixture, a named package cannot refer to classes in the default one.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static Supplier<Object> stage(int scale, String stage) throws ReflectiveOperationException {
+        return call(scale, "stage", stage);
+    }
+
+    static Supplier<Object> checkRecord(int scale, String strategy, String options)
+            throws ReflectiveOperationException {
+        return call(scale, "checkRecord", strategy, options);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Supplier<Object> parse(String record, String parser) throws ReflectiveOperationException {
+        Class<?> type = Class.forName("TokenizerFixture");
+        Object fixture = type.getConstructor(String.class).newInstance(record);
+        return (Supplier<Object>) type.getMethod("parse", String.class).invoke(fixture, parser);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<Object> call(int scale, String method, String... arguments)
+            throws ReflectiveOperationException {
+        Class<?> type = Class.forName("StageFixture");
+        Object fixture = type.getConstructor(int.class).newInstance(scale);
+        Class<?>[] parameters = new Class<?>[arguments.length];
+        Arrays.fill(parameters, String.class);
+        return (Supplier<Object>) type.getMethod(method, parameters).invoke(fixture, (Object[]) arguments);
+    }
+
+}
@@ -0,0 +1,49 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Frames per second of each stage of the detection chain, on the frames of record2 at 40x40
+ * and upscaled to 160x160 and 640x640.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class StageBenchmark {
+
+    @Param({"1", "4", "16"})
+    int scale;
+
+    @Param({"getImage", "getMedianImage", "getAverageImage", "getBinaryImage", "getBinaryMask",
+            "granularityFilter", "granularityFilterImage", "getDistributionImage", "getRectsForImage", "getRectsForImagePyramid", "detect"})
+    String stage;
+
+    private Supplier<Object> run;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        run = Fixtures.stage(scale, stage);
+    }
+
+    @Benchmark
+    public Object stage() {
+        return run.get();
+    }
+
+}
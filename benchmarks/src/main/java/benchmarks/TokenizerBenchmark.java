@@ -0,0 +1,48 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to parse a whole text record from memory with RecordTokenizer, and with the old Scanner
+ * based loop for comparison. record2 is 629311 bytes, so 100 MB/s is about 6 ms per pass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    @Param({"record", "record2"})
+    String input;
+
+    @Param({"tokenizer", "scanner"})
+    String parser;
+
+    private Supplier<Object> run;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        run = Fixtures.parse(input, parser);
+    }
+
+    @Benchmark
+    public Object parse() {
+        return run.get();
+    }
+
+}
@@ -0,0 +1,142 @@
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.imageio.ImageIO;
+
+/**
+ * Encodes and writes images and CSV files on a background thread, with the same file names as
+ * Main.saveImage and Main.saveHistogram.
+ *
+ * The caller only copies the pixels into a raster or formats the CSV text, so it can reuse its
+ * buffers right away. Queued writes are bounded by queueCapacity: when the writer falls behind
+ * the caller blocks instead of piling up frames in memory. close() waits for the queued writes
+ * and throws the first error any of them hit, a failed write does not stop the later ones.
+ */
+public class AsyncImageWriter implements Closeable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    private interface Job {
+
+        void write() throws IOException;
+
+    }
+
+    private static final Job END_OF_JOBS = () -> {
+    };
+
+    private final BlockingQueue<Job> jobs;
+    private final Thread thread;
+    private volatile IOException error;
+    private int written;
+
+    public AsyncImageWriter(int queueCapacity) {
+        this.jobs = new ArrayBlockingQueue<>(queueCapacity);
+        this.thread = new Thread(this::run, "image-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public AsyncImageWriter() {
+        this(DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public void saveImage(PackedImage image, String filename) throws IOException {
+        queueImage(image, 1, new File(filename + ".png"));
+    }
+
+    public void saveImage(PackedImage image, int scale, String filename) throws IOException {
+        if (scale < 1) {
+            return;
+        }
+        queueImage(image, scale, new File(filename + "_" + Integer.toString(scale) + ".png"));
+    }
+
+    public void saveHistogram(TreeMap<Integer, Integer> data, String filename) throws IOException {
+        String csv = Main.toCsv(data);
+        File file = new File(filename + ".csv");
+        submit(() -> {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                writer.write(csv);
+            }
+        });
+    }
+
+    public synchronized int getWritten() {
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            jobs.put(END_OF_JOBS);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the queued writes", e);
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void queueImage(PackedImage image, int scale, File imageFile) throws IOException {
+        BufferedImage bufferedImage = Main.toBufferedImage(image, scale);
+        submit(() -> {
+            if (!ImageIO.write(bufferedImage, "png", imageFile)) {
+                throw new IOException("No png writer for " + imageFile);
+            }
+        });
+    }
+
+    private void submit(Job job) throws IOException {
+        if (error != null) {
+            throw error;
+        }
+        try {
+            jobs.put(job);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while queueing a write", e);
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Job job = jobs.take();
+                if (job == END_OF_JOBS) {
+                    return;
+                }
+                try {
+                    job.write();
+                    synchronized (this) {
+                        written++;
+                    }
+                } catch (IOException e) {
+                    fail(e);
+                } catch (RuntimeException e) {
+                    // keep draining, a dead writer would leave submit() and close() blocked on the queue
+                    fail(new IOException("Write failed", e));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fail(IOException e) {
+        if (error == null) {
+            error = e;
+        }
+    }
+
+}
@@ -0,0 +1,275 @@
+import java.util.Arrays;
+
+/**
+ * One bit per pixel mask, each row stored in 64 pixel words (bit i of word k is x = 64 * k + i).
+ *
+ * The filters work on whole words with shifts and bitwise logic, so 64 pixels are handled
+ * per operation. Pixels outside the frame count as off, bits past the width are always zero.
+ */
+public class BinaryMask {
+
+    final int width;
+    final int height;
+    final int words;
+    final long[] bits;
+    private final long lastWordMask;
+
+    public BinaryMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.words = (width + 63) >>> 6;
+        this.bits = new long[words * height];
+        int tail = width & 63;
+        this.lastWordMask = tail == 0 ? -1L : (1L << tail) - 1;
+    }
+
+    public BinaryMask(BinaryMask mask) {
+        this(mask.width, mask.height);
+        copyFrom(mask);
+    }
+
+    public boolean get(int x, int y) {
+        return (bits[y * words + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    public void set(int x, int y, boolean value) {
+        int index = y * words + (x >>> 6);
+        if (value) {
+            bits[index] |= 1L << x;
+        } else {
+            bits[index] &= ~(1L << x);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(bits, 0L);
+    }
+
+    public void copyFrom(BinaryMask mask) {
+        System.arraycopy(mask.bits, 0, bits, 0, bits.length);
+    }
+
+    public int count() {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // Clears every pixel of the rectangle [x0, x1] x [y0, y1], bounds included
+    public void clearRect(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(x0, 0);
+        y0 = Math.max(y0, 0);
+        x1 = Math.min(x1, width - 1);
+        y1 = Math.min(y1, height - 1);
+        if (x0 > x1 || y0 > y1) {
+            return;
+        }
+        int firstWord = x0 >>> 6;
+        int lastWord = x1 >>> 6;
+        long firstMask = -1L << x0;
+        long lastMask = -1L >>> (63 - (x1 & 63));
+        for (int y = y0; y <= y1; ++y) {
+            int row = y * words;
+            for (int k = firstWord; k <= lastWord; ++k) {
+                long m = -1L;
+                if (k == firstWord) {
+                    m &= firstMask;
+                }
+                if (k == lastWord) {
+                    m &= lastMask;
+                }
+                bits[row + k] &= ~m;
+            }
+        }
+    }
+
+    // Neighbour majority: a pixel stays on when more than 4 of its 8 neighbours are on, the frame
+    // border is cleared. This is granularityFilter on a mask.
+    public void majority(BinaryMask out) {
+        long[] counter = new long[4];
+        for (int y = 0; y < height; ++y) {
+            int row = y * words;
+            if (y == 0 || y == height - 1) {
+                Arrays.fill(out.bits, row, row + words, 0L);
+            } else {
+                majorityRow(bits, row - words, row, row + words, out.bits, row, counter);
+            }
+        }
+    }
+
+    // Majority of one interior row whose neighbour rows are at the given offsets of src, the rows
+    // must have this mask's width. counter is four longs of scratch.
+    void majorityRow(long[] src, int above, int row, int below, long[] dst, int out, long[] counter) {
+        for (int k = 0; k < words; ++k) {
+            // four bit counter, one bit slice per pixel
+            Arrays.fill(counter, 0L);
+            add(counter, src[above + k]);
+            add(counter, src[below + k]);
+            add(counter, west(src, above, k));
+            add(counter, east(src, above, k));
+            add(counter, west(src, row, k));
+            add(counter, east(src, row, k));
+            add(counter, west(src, below, k));
+            add(counter, east(src, below, k));
+            // count > 4
+            dst[out + k] = counter[3] | (counter[2] & (counter[1] | counter[0]));
+        }
+        clearEdges(dst, out);
+    }
+
+    private static void add(long[] counter, long value) {
+        long carry = counter[0] & value;
+        counter[0] ^= value;
+        long next = counter[1] & carry;
+        counter[1] ^= carry;
+        carry = counter[2] & next;
+        counter[2] ^= next;
+        counter[3] |= carry;
+    }
+
+    // 3x3 erosion, a pixel stays on only when its whole neighbourhood is on
+    public void erode(BinaryMask out) {
+        long[] dst = out.bits;
+        for (int y = 0; y < height; ++y) {
+            int row = y * words;
+            if (y == 0 || y == height - 1) {
+                Arrays.fill(dst, row, row + words, 0L);
+                continue;
+            }
+            int above = row - words;
+            int below = row + words;
+            for (int k = 0; k < words; ++k) {
+                dst[row + k] = horizontalAnd(above, k) & horizontalAnd(row, k) & horizontalAnd(below, k);
+            }
+            dst[row + words - 1] &= lastWordMask;
+        }
+    }
+
+    // 3x3 dilation, a pixel turns on when anything in its neighbourhood is on
+    public void dilate(BinaryMask out) {
+        long[] dst = out.bits;
+        for (int y = 0; y < height; ++y) {
+            int row = y * words;
+            for (int k = 0; k < words; ++k) {
+                long value = horizontalOr(row, k);
+                if (y > 0) {
+                    value |= horizontalOr(row - words, k);
+                }
+                if (y < height - 1) {
+                    value |= horizontalOr(row + words, k);
+                }
+                dst[row + k] = value;
+            }
+            dst[row + words - 1] &= lastWordMask;
+        }
+    }
+
+    public void open(BinaryMask out, BinaryMask scratch) {
+        erode(scratch);
+        scratch.dilate(out);
+    }
+
+    public void close(BinaryMask out, BinaryMask scratch) {
+        dilate(scratch);
+        scratch.erode(out);
+    }
+
+    // Half the size in both directions, a pixel is on if any pixel of its 2x2 block is
+    public void downsample(BinaryMask out) {
+        for (int y = 0; y < out.height; ++y) {
+            int top = 2 * y * words;
+            int bottom = 2 * y + 1 < height ? top + words : top;
+            int row = y * out.words;
+            for (int k = 0; k < out.words; ++k) {
+                long low = bits[top + 2 * k] | bits[bottom + 2 * k];
+                long high = 2 * k + 1 < words ? bits[top + 2 * k + 1] | bits[bottom + 2 * k + 1] : 0L;
+                out.bits[row + k] = halve(low) | (halve(high) << 32);
+            }
+        }
+    }
+
+    // Bit i of the result is bit 2i or 2i + 1 of the word
+    private static long halve(long word) {
+        word = (word | (word >>> 1)) & 0x5555555555555555L;
+        word = (word | (word >>> 1)) & 0x3333333333333333L;
+        word = (word | (word >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        word = (word | (word >>> 4)) & 0x00FF00FF00FF00FFL;
+        word = (word | (word >>> 8)) & 0x0000FFFF0000FFFFL;
+        return (word | (word >>> 16)) & 0x00000000FFFFFFFFL;
+    }
+
+    // Copies the width x height region of the mask starting at (x0, y0) into this mask
+    public void copyRegion(BinaryMask mask, int x0, int y0) {
+        int shift = x0 & 63;
+        for (int y = 0; y < height; ++y) {
+            int source = (y0 + y) * mask.words + (x0 >>> 6);
+            int end = (y0 + y + 1) * mask.words;
+            int row = y * words;
+            for (int k = 0; k < words; ++k) {
+                long word = source + k < end ? mask.bits[source + k] >>> shift : 0L;
+                if (shift != 0 && source + k + 1 < end) {
+                    word |= mask.bits[source + k + 1] << (64 - shift);
+                }
+                bits[row + k] = word;
+            }
+            bits[row + words - 1] &= lastWordMask;
+        }
+    }
+
+    public void toImage(Main.Channel channel, PackedImage image) {
+        int on = 0xFF << channel.shift;
+        for (int y = 0; y < height; ++y) {
+            int row = y * width;
+            for (int x = 0; x < width; ++x) {
+                image.pixels[row + x] = get(x, y) ? on : 0;
+            }
+        }
+    }
+
+    public static BinaryMask fromImage(PackedImage image, Main.Channel channel) {
+        BinaryMask mask = new BinaryMask(image.width, image.height);
+        for (int y = 0; y < image.height; ++y) {
+            int row = y * mask.words;
+            for (int x = 0; x < image.width; ++x) {
+                if (((image.pixels[y * image.width + x] >> channel.shift) & 0xFF) > 0) {
+                    mask.bits[row + (x >>> 6)] |= 1L << x;
+                }
+            }
+        }
+        return mask;
+    }
+
+    // value of the pixel to the left (x - 1) of every pixel in word k
+    private long west(long[] bits, int row, int k) {
+        long value = bits[row + k] << 1;
+        if (k > 0) {
+            value |= bits[row + k - 1] >>> 63;
+        }
+        return value;
+    }
+
+    // value of the pixel to the right (x + 1) of every pixel in word k
+    private long east(long[] bits, int row, int k) {
+        long value = bits[row + k] >>> 1;
+        if (k < words - 1) {
+            value |= bits[row + k + 1] << 63;
+        }
+        return value;
+    }
+
+    private long horizontalAnd(int row, int k) {
+        return west(bits, row, k) & bits[row + k] & east(bits, row, k);
+    }
+
+    private long horizontalOr(int row, int k) {
+        return west(bits, row, k) | bits[row + k] | east(bits, row, k);
+    }
+
+    private void clearEdges(long[] dst, int row) {
+        dst[row] &= ~1L;
+        dst[row + words - 1] &= lastWordMask & ~(1L << (width - 1));
+    }
+
+}
@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Connected components of a mask (8-connectivity) found with a single raster scan.
+ *
+ * Each lit pixel takes the label of its already visited neighbours, labels that meet are
+ * joined in a union-find forest, and the bounding box, area and coordinate sums are kept per
+ * provisional label during the scan. Joining the statistics of every label into its root at
+ * the end gives the blobs without a second pass over the pixels. The result only depends on
+ * the mask, and every blob is reported.
+ */
+public class BlobDetector {
+
+    static class Blob {
+
+        Main.Rect rect;
+        int area;
+        double centroidX;
+        double centroidY;
+
+    }
+
+    final int width;
+    final int height;
+    private int[] previousRow;
+    private int[] currentRow;
+    private int[] parent;
+    private int[] minX;
+    private int[] maxX;
+    private int[] minY;
+    private int[] maxY;
+    private int[] area;
+    private long[] sumX;
+    private long[] sumY;
+
+    public BlobDetector(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.previousRow = new int[width];
+        this.currentRow = new int[width];
+        // no more provisional labels than one every other pixel of every other row
+        int capacity = ((width + 1) / 2) * ((height + 1) / 2) + 1;
+        this.parent = new int[capacity];
+        this.minX = new int[capacity];
+        this.maxX = new int[capacity];
+        this.minY = new int[capacity];
+        this.maxY = new int[capacity];
+        this.area = new int[capacity];
+        this.sumX = new long[capacity];
+        this.sumY = new long[capacity];
+    }
+
+    public List<Blob> detect(BinaryMask mask) {
+        int labels = label(mask);
+        List<Blob> blobs = new ArrayList<>();
+        for (int l = 1; l < labels; ++l) {
+            if (parent[l] != l) {
+                continue;
+            }
+            Blob blob = new Blob();
+            Main.Rect rect = new Main.Rect();
+            rect.w = maxX[l] - minX[l];
+            rect.h = maxY[l] - minY[l];
+            rect.x = minX[l] + rect.w / 2;
+            rect.y = minY[l] + rect.h / 2;
+            blob.rect = rect;
+            blob.area = area[l];
+            blob.centroidX = (double) sumX[l] / area[l];
+            blob.centroidY = (double) sumY[l] / area[l];
+            blobs.add(blob);
+        }
+        return blobs;
+    }
+
+    // Rects of the blobs large enough to be objects, with the same limits as the distribution search
+    public List<Main.Rect> detectRects(BinaryMask mask) {
+        List<Main.Rect> rects = new ArrayList<>();
+        for (Blob blob : detect(mask)) {
+            if (blob.rect.w > Main.MIN_WIDTH && blob.rect.h > Main.MIN_HEIGHT) {
+                rects.add(blob.rect);
+            }
+        }
+        return rects;
+    }
+
+    // Returns the number of labels used, label 0 is the background
+    private int label(BinaryMask mask) {
+        int next = 1;
+        Arrays.fill(previousRow, 0);
+        for (int y = 0; y < height; ++y) {
+            int[] row = currentRow;
+            Arrays.fill(row, 0);
+            int word = y * mask.words;
+            for (int k = 0; k < mask.words; ++k) {
+                long bits = mask.bits[word + k];
+                while (bits != 0) {
+                    int x = (k << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    int label = 0;
+                    if (x > 0) {
+                        label = join(label, row[x - 1]);
+                        label = join(label, previousRow[x - 1]);
+                    }
+                    label = join(label, previousRow[x]);
+                    if (x < width - 1) {
+                        label = join(label, previousRow[x + 1]);
+                    }
+                    if (label == 0) {
+                        label = next++;
+                        parent[label] = label;
+                        minX[label] = x;
+                        maxX[label] = x;
+                        minY[label] = y;
+                        maxY[label] = y;
+                        area[label] = 0;
+                        sumX[label] = 0;
+                        sumY[label] = 0;
+                    }
+                    row[x] = label;
+                    if (x < minX[label]) minX[label] = x;
+                    if (x > maxX[label]) maxX[label] = x;
+                    maxY[label] = y;
+                    area[label]++;
+                    sumX[label] += x;
+                    sumY[label] += y;
+                }
+            }
+            currentRow = previousRow;
+            previousRow = row;
+        }
+        for (int l = 1; l < next; ++l) {
+            int root = find(l);
+            if (root != l) {
+                minX[root] = Math.min(minX[root], minX[l]);
+                maxX[root] = Math.max(maxX[root], maxX[l]);
+                minY[root] = Math.min(minY[root], minY[l]);
+                maxY[root] = Math.max(maxY[root], maxY[l]);
+                area[root] += area[l];
+                sumX[root] += sumX[l];
+                sumY[root] += sumY[l];
+                parent[l] = root;
+            }
+        }
+        return next;
+    }
+
+    // Joins the label of the pixel with a neighbour label, 0 means unlabelled
+    private int join(int label, int neighbour) {
+        if (neighbour == 0) {
+            return label;
+        }
+        if (label == 0) {
+            return neighbour;
+        }
+        int a = find(label);
+        int b = find(neighbour);
+        if (a == b) {
+            return label;
+        }
+        // the smaller label stays root, so roots appear in raster order
+        if (a < b) {
+            parent[b] = a;
+        } else {
+            parent[a] = b;
+        }
+        return label;
+    }
+
+    private int find(int label) {
+        while (parent[label] != label) {
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * Mean filter over a square window of any radius, built on a summed-area table.
+ *
+ * The table is built once per frame over the image padded by the border policy, after that
+ * every output pixel is four lookups per channel whatever the radius. The tables are kept
+ * between frames, so a filter should be reused for frames of the same size.
+ */
+public class BoxFilter {
+
+    enum Border {
+        CLAMP,
+        REFLECT
+    }
+
+    final int width;
+    final int height;
+    final int radius;
+    final Border border;
+    private final int stride;
+    private final int[] columns;
+    private final int[] rows;
+    private final int[] reds;
+    private final int[] greens;
+    private final int[] blues;
+
+    public BoxFilter(int width, int height, int radius, Border border) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Radius must not be negative, got " + radius);
+        }
+        int paddedWidth = width + 2 * radius;
+        int paddedHeight = height + 2 * radius;
+        // sums are kept in ints, 255 per channel per padded pixel must fit
+        if ((long) paddedWidth * paddedHeight * 255 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Frame too large for a box filter: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.radius = radius;
+        this.border = border;
+        this.stride = paddedWidth + 1;
+        this.columns = new int[paddedWidth];
+        this.rows = new int[paddedHeight];
+        for (int x = 0; x < paddedWidth; ++x) {
+            columns[x] = map(x - radius, width, border);
+        }
+        for (int y = 0; y < paddedHeight; ++y) {
+            rows[y] = map(y - radius, height, border);
+        }
+        int size = stride * (paddedHeight + 1);
+        this.reds = new int[size];
+        this.greens = new int[size];
+        this.blues = new int[size];
+    }
+
+    public void apply(PackedImage image, PackedImage avgImage) {
+        if (image.width != width || image.height != height) {
+            throw new IllegalArgumentException("Filter is for " + width + "x" + height + " frames");
+        }
+        int[] src = image.pixels;
+        int[] dst = avgImage.pixels;
+        int paddedWidth = columns.length;
+        for (int y = 0; y < rows.length; ++y) {
+            int row = rows[y] * width;
+            int above = y * stride + 1;
+            int current = above + stride;
+            int sumRed = 0, sumGreen = 0, sumBlue = 0;
+            for (int x = 0; x < paddedWidth; ++x) {
+                int pixel = src[row + columns[x]];
+                sumRed += pixel >> 16 & 0xFF;
+                sumGreen += pixel >> 8 & 0xFF;
+                sumBlue += pixel & 0xFF;
+                reds[current + x] = reds[above + x] + sumRed;
+                greens[current + x] = greens[above + x] + sumGreen;
+                blues[current + x] = blues[above + x] + sumBlue;
+            }
+        }
+        int size = 2 * radius + 1;
+        int area = size * size;
+        int down = size * stride;
+        for (int y = 0; y < height; ++y) {
+            int top = y * stride;
+            for (int x = 0; x < width; ++x) {
+                int a = top + x;
+                int b = a + size;
+                int c = a + down;
+                int d = c + size;
+                int r = (reds[d] - reds[b] - reds[c] + reds[a]) / area;
+                int g = (greens[d] - greens[b] - greens[c] + greens[a]) / area;
+                int bl = (blues[d] - blues[b] - blues[c] + blues[a]) / area;
+                dst[y * width + x] = PackedImage.pack(r, g, bl);
+            }
+        }
+    }
+
+    // Maps a coordinate outside [0, size) back inside it
+    static int map(int i, int size, Border border) {
+        if (i >= 0 && i < size) {
+            return i;
+        }
+        switch (border) {
+            case CLAMP:
+                return i < 0 ? 0 : size - 1;
+            default:
+                int period = 2 * size;
+                int m = ((i % period) + period) % period;
+                return m < size ? m : period - 1 - m;
+        }
+    }
+
+}
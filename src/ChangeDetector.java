@@ -0,0 +1,121 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Skips the detection chain on frames that did not change, reusing the last detections.
+ *
+ * The raw frame is compared with the last frame that was detected, tile by tile: the sum of
+ * |dr| + |dg| + |db| over the sampled pixels of a tile, divided by the samples, is the tile's
+ * change. The frame counts as changed as soon as one tile goes over the threshold, so a changed
+ * frame usually costs a few tiles. Comparing with the last detected frame rather than the previous
+ * one keeps a slow drift from going unnoticed. Skipped frames still go into the context's
+ * recording, so the adaptive thresholds follow every frame as with Main.detect.
+ */
+public class ChangeDetector {
+
+    public static final int DEFAULT_TILE_SIZE = 8;
+    public static final int DEFAULT_SAMPLE_STEP = 1;
+    public static final int DEFAULT_THRESHOLD = 8;
+
+    final FrameGeometry geometry;
+    final int tileSize;
+    final int sampleStep;
+    final int threshold;
+    private final int[] reference;
+    private boolean hasReference;
+    private List<Main.Rect> rects = new ArrayList<>();
+    private int skipped;
+    private int detected;
+
+    public ChangeDetector(FrameGeometry geometry, int tileSize, int sampleStep, int threshold) {
+        if (tileSize < 1 || sampleStep < 1 || sampleStep > tileSize || threshold < 0) {
+            throw new IllegalArgumentException("Tile size and sample step must be positive, the step at most "
+                    + "the tile size, and the threshold not negative");
+        }
+        this.geometry = geometry;
+        this.tileSize = tileSize;
+        this.sampleStep = sampleStep;
+        this.threshold = threshold;
+        this.reference = new int[geometry.getFrameSize()];
+    }
+
+    public ChangeDetector(FrameGeometry geometry) {
+        this(geometry, DEFAULT_TILE_SIZE, DEFAULT_SAMPLE_STEP, DEFAULT_THRESHOLD);
+    }
+
+    // Rects of the frame, the last detection's if the frame did not change, copies the caller may change
+    public List<Main.Rect> detect(DetectionContext context, int[] data, Main.Channel channel,
+                                  Main.DetectionStrategy strategy) {
+        if (hasReference && !changed(data)) {
+            Main.record(context, data);
+            skipped++;
+        } else {
+            rects = copy(Main.detect(context, data, channel, strategy));
+            System.arraycopy(data, 0, reference, 0, reference.length);
+            hasReference = true;
+            detected++;
+        }
+        return copy(rects);
+    }
+
+    public boolean changed(int[] data) {
+        int width = geometry.width;
+        int height = geometry.height;
+        for (int ty = 0; ty < height; ty += tileSize) {
+            for (int tx = 0; tx < width; tx += tileSize) {
+                int sum = 0;
+                int samples = 0;
+                for (int y = ty; y < Math.min(ty + tileSize, height); y += sampleStep) {
+                    int index = 2 * (y * width + tx);
+                    for (int x = tx; x < Math.min(tx + tileSize, width); x += sampleStep, index += 2 * sampleStep) {
+                        sum += difference(data[index], data[index + 1], reference[index], reference[index + 1]);
+                        samples++;
+                    }
+                }
+                if (sum > threshold * samples) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Forgets the last frame, the next one is always detected
+    public void reset() {
+        hasReference = false;
+        rects = new ArrayList<>();
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public int getDetected() {
+        return detected;
+    }
+
+    private static int difference(int h, int l, int referenceH, int referenceL) {
+        if (h == referenceH && l == referenceL) {
+            return 0;
+        }
+        int pixel = ChromaTable.decode(h, l);
+        int referencePixel = ChromaTable.decode(referenceH, referenceL);
+        return Math.abs(PackedImage.red(pixel) - PackedImage.red(referencePixel))
+                + Math.abs(PackedImage.green(pixel) - PackedImage.green(referencePixel))
+                + Math.abs(PackedImage.blue(pixel) - PackedImage.blue(referencePixel));
+    }
+
+    private static List<Main.Rect> copy(List<Main.Rect> rects) {
+        List<Main.Rect> copies = new ArrayList<>();
+        for (Main.Rect rect : rects) {
+            Main.Rect copy = new Main.Rect();
+            copy.x = rect.x;
+            copy.y = rect.y;
+            copy.w = rect.w;
+            copy.h = rect.h;
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+}
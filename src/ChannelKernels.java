@@ -0,0 +1,96 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The per-pixel channel arithmetic of the detection chain: RGB565 decoding, the chroma
+ * thresholds and the 3x3 mean.
+ *
+ * DEFAULT is the Vector API implementation when the jdk.incubator.vector module is present
+ * (run with --add-modules jdk.incubator.vector) and its results match the scalar kernels,
+ * otherwise the scalar one. The kernels.impl system property forces "scalar" or "vector".
+ */
+public interface ChannelKernels {
+
+    ChannelKernels SCALAR = new ScalarKernels();
+    ChannelKernels DEFAULT = select(System.getProperty("kernels.impl", "auto"));
+
+    String getName();
+
+    // Same as Main.getImage
+    void decode(int[] rawData, PackedImage image);
+
+    // Same as Main.getBinaryImage
+    void binaryImage(PackedImage image, Main.Channel channel, PackedImage binary);
+
+    // Same as Main.getBinaryMask
+    void binaryMask(PackedImage image, Main.Channel channel, BinaryMask mask);
+
+    // Same as Main.getAverageImage with radius 1 and a clamped border
+    void average3x3(PackedImage image, PackedImage avgImage);
+
+    static ChannelKernels select(String impl) {
+        if (impl.equals("scalar")) {
+            return SCALAR;
+        }
+        try {
+            ChannelKernels kernels = (ChannelKernels) Class.forName("VectorKernels")
+                    .getDeclaredConstructor().newInstance();
+            // odd sizes so the vector loops leave a tail
+            if (verify(kernels, SCALAR, 67, 23, 0x565L)) {
+                return kernels;
+            }
+            System.err.println("Vector kernels differ from the scalar kernels, using scalar");
+        } catch (Throwable e) {
+            if (impl.equals("vector")) {
+                System.err.println("Vector kernels unavailable, using scalar: " + e);
+            }
+        }
+        return SCALAR;
+    }
+
+    // Runs both implementations on a random frame and checks every output is bit identical
+    static boolean verify(ChannelKernels kernels, ChannelKernels reference, int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] rawData = new int[2 * width * height];
+        for (int i = 0; i < rawData.length; ++i) {
+            rawData[i] = random.nextInt(256);
+        }
+        PackedImage image = new PackedImage(width, height);
+        PackedImage expectedImage = new PackedImage(width, height);
+        kernels.decode(rawData, image);
+        reference.decode(rawData, expectedImage);
+        if (!Arrays.equals(image.pixels, expectedImage.pixels)) {
+            return false;
+        }
+        // full 8 bit range as well, not only decoded values
+        PackedImage noise = new PackedImage(width, height);
+        for (int i = 0; i < noise.pixels.length; ++i) {
+            noise.pixels[i] = random.nextInt(1 << 24);
+        }
+        for (PackedImage source : new PackedImage[] {image, noise}) {
+            PackedImage result = new PackedImage(width, height);
+            PackedImage expected = new PackedImage(width, height);
+            kernels.average3x3(source, result);
+            reference.average3x3(source, expected);
+            if (!Arrays.equals(result.pixels, expected.pixels)) {
+                return false;
+            }
+            for (Main.Channel channel : Main.Channel.values()) {
+                kernels.binaryImage(source, channel, result);
+                reference.binaryImage(source, channel, expected);
+                if (!Arrays.equals(result.pixels, expected.pixels)) {
+                    return false;
+                }
+                BinaryMask mask = new BinaryMask(width, height);
+                BinaryMask expectedMask = new BinaryMask(width, height);
+                kernels.binaryMask(source, channel, mask);
+                reference.binaryMask(source, channel, expectedMask);
+                if (!Arrays.equals(mask.bits, expectedMask.bits)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+}
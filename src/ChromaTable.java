@@ -0,0 +1,182 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Lookup table from a raw RGB565 pixel to its chroma mask bits, one bit per channel.
+ *
+ * decodeThreshold goes from the raw frame straight to a BinaryMask in one loop, doing the work of
+ * getImage and getBinaryMask without the decoded image in between. The static table holds the
+ * fixed thresholds, table(context) builds one for the adaptive thresholds of a recording and keeps
+ * it until they change, which they rarely do once a recording has run for a few frames.
+ */
+public class ChromaTable {
+
+    public static final int RED_BIT = 1;
+    public static final int GREEN_BIT = 2;
+    public static final int BLUE_BIT = 4;
+
+    private static final byte[] TABLE = build(Main.getThreshold(Main.Channel.RED),
+            Main.getThreshold(Main.Channel.GREEN), Main.getThreshold(Main.Channel.BLUE));
+
+    // The table for other thresholds and the thresholds it was built for, replaced as a whole
+    private static final class Adapted {
+
+        final int red;
+        final int green;
+        final int blue;
+        final byte[] table;
+
+        Adapted(int red, int green, int blue) {
+            this.red = red;
+            this.green = green;
+            this.blue = blue;
+            this.table = build(red, green, blue);
+        }
+
+    }
+
+    private static volatile Adapted adapted;
+
+    private static byte[] build(int redThreshold, int greenThreshold, int blueThreshold) {
+        byte[] table = new byte[1 << 16];
+        for (int h = 0; h < 256; ++h) {
+            for (int l = 0; l < 256; ++l) {
+                int pixel = decode(h, l);
+                int bits = 0;
+                if (Main.isChroma(pixel, Main.Channel.RED, redThreshold)) bits |= RED_BIT;
+                if (Main.isChroma(pixel, Main.Channel.GREEN, greenThreshold)) bits |= GREEN_BIT;
+                if (Main.isChroma(pixel, Main.Channel.BLUE, blueThreshold)) bits |= BLUE_BIT;
+                table[(h << 8) | l] = (byte) bits;
+            }
+        }
+        return table;
+    }
+
+    // The table for the given thresholds, the fixed one when they are the fixed ones
+    static byte[] table(int redThreshold, int greenThreshold, int blueThreshold) {
+        if (redThreshold == Main.getThreshold(Main.Channel.RED) && greenThreshold == Main.getThreshold(Main.Channel.GREEN)
+                && blueThreshold == Main.getThreshold(Main.Channel.BLUE)) {
+            return TABLE;
+        }
+        Adapted last = adapted;
+        if (last == null || last.red != redThreshold || last.green != greenThreshold || last.blue != blueThreshold) {
+            last = new Adapted(redThreshold, greenThreshold, blueThreshold);
+            adapted = last;
+        }
+        return last.table;
+    }
+
+    // The table for the thresholds the context detects with, see DetectionContext.adaptiveThreshold
+    static byte[] table(DetectionContext context) {
+        RunningHistogram recording = context.recording;
+        if (!context.adaptiveThreshold || recording == null) {
+            return TABLE;
+        }
+        return table(recording.getThreshold(Main.Channel.RED), recording.getThreshold(Main.Channel.GREEN),
+                recording.getThreshold(Main.Channel.BLUE));
+    }
+
+    // Same expansion as getImage
+    public static int decode(int h, int l) {
+        int r = h & 0xF8;
+        int g = ((h & 0x07) << 5) | ((l & 0xE0) >> 3);
+        int b = (l & 0x1F) << 3;
+        return PackedImage.pack(r, g, b);
+    }
+
+    public static int bit(Main.Channel channel) {
+        switch (channel) {
+            case RED:
+                return RED_BIT;
+            case GREEN:
+                return GREEN_BIT;
+            default:
+                return BLUE_BIT;
+        }
+    }
+
+    // Bits of the fixed thresholds
+    public static int lookup(int h, int l) {
+        return TABLE[((h & 0xFF) << 8) | (l & 0xFF)];
+    }
+
+    public static void decodeThreshold(int[] rawData, Main.Channel channel, BinaryMask mask) {
+        decodeThreshold(TABLE, rawData, channel, mask);
+    }
+
+    static void decodeThreshold(byte[] table, int[] rawData, Main.Channel channel, BinaryMask mask) {
+        int width = mask.width;
+        int bit = bit(channel);
+        long[] bits = mask.bits;
+        int index = 0;
+        for (int y = 0; y < mask.height; ++y) {
+            int word = y * mask.words;
+            long value = 0;
+            for (int x = 0; x < width; ++x, index += 2) {
+                if ((table[(rawData[index] << 8) | rawData[index + 1]] & bit) != 0) {
+                    value |= 1L << x;
+                }
+                if ((x & 63) == 63 || x == width - 1) {
+                    bits[word++] = value;
+                    value = 0;
+                }
+            }
+        }
+    }
+
+    // All three channels in the same pass, one lookup per pixel
+    public static void decodeThreshold(int[] rawData, BinaryMask red, BinaryMask green, BinaryMask blue) {
+        decodeThreshold(TABLE, rawData, red, green, blue);
+    }
+
+    static void decodeThreshold(byte[] table, int[] rawData, BinaryMask red, BinaryMask green, BinaryMask blue) {
+        int width = red.width;
+        int index = 0;
+        for (int y = 0; y < red.height; ++y) {
+            int word = y * red.words;
+            long reds = 0;
+            long greens = 0;
+            long blues = 0;
+            for (int x = 0; x < width; ++x, index += 2) {
+                int bits = table[(rawData[index] << 8) | rawData[index + 1]];
+                reds |= (long) (bits & RED_BIT) << x;
+                greens |= (long) ((bits & GREEN_BIT) >> 1) << x;
+                blues |= (long) ((bits & BLUE_BIT) >> 2) << x;
+                if ((x & 63) == 63 || x == width - 1) {
+                    red.bits[word] = reds;
+                    green.bits[word] = greens;
+                    blue.bits[word] = blues;
+                    word++;
+                    reds = 0;
+                    greens = 0;
+                    blues = 0;
+                }
+            }
+        }
+    }
+
+    // Same as above reading the frame bytes as FrameSource.getFrame returns them
+    public static void decodeThreshold(ByteBuffer frame, Main.Channel channel, BinaryMask mask) {
+        decodeThreshold(TABLE, frame, channel, mask);
+    }
+
+    static void decodeThreshold(byte[] table, ByteBuffer frame, Main.Channel channel, BinaryMask mask) {
+        int width = mask.width;
+        int bit = bit(channel);
+        long[] bits = mask.bits;
+        int index = 0;
+        for (int y = 0; y < mask.height; ++y) {
+            int word = y * mask.words;
+            long value = 0;
+            for (int x = 0; x < width; ++x, index += 2) {
+                if ((table[frame.getShort(index) & 0xFFFF] & bit) != 0) {
+                    value |= 1L << x;
+                }
+                if ((x & 63) == 63 || x == width - 1) {
+                    bits[word++] = value;
+                    value = 0;
+                }
+            }
+        }
+    }
+
+}
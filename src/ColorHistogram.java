@@ -0,0 +1,119 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * Histogram of the red, green and blue values of an image, counts[channel.ordinal()][value].
+ *
+ * All three channels are counted in one pass over the pixels. Histograms of parts of a frame
+ * or of different frames are combined with merge, e.g. the partial histograms of several worker
+ * threads.
+ */
+public class ColorHistogram {
+
+    final int[][] counts = new int[3][256];
+    private int pixels;
+
+    public void clear() {
+        for (int[] channel : counts) {
+            Arrays.fill(channel, 0);
+        }
+        pixels = 0;
+    }
+
+    // Clears the histogram and counts the image
+    public void fill(PackedImage image) {
+        clear();
+        add(image.pixels, 0, image.pixels.length);
+    }
+
+    public void add(int[] pixels, int offset, int length) {
+        int[] reds = counts[0];
+        int[] greens = counts[1];
+        int[] blues = counts[2];
+        for (int i = offset; i < offset + length; ++i) {
+            int pixel = pixels[i];
+            reds[(pixel >> 16) & 0xFF]++;
+            greens[(pixel >> 8) & 0xFF]++;
+            blues[pixel & 0xFF]++;
+        }
+        this.pixels += length;
+    }
+
+    // Clears the histogram and counts a raw RGB565 frame without decoding it into an image
+    public void fillRaw(int[] rawData) {
+        clear();
+        int[] reds = counts[0];
+        int[] greens = counts[1];
+        int[] blues = counts[2];
+        for (int index = 0; index < rawData.length; index += 2) {
+            int h = rawData[index];
+            int l = rawData[index + 1];
+            reds[h & 0xF8]++;
+            greens[((h & 0x07) << 5) | ((l & 0xE0) >> 3)]++;
+            blues[(l & 0x1F) << 3]++;
+        }
+        pixels = rawData.length / 2;
+    }
+
+    // Same as above reading the frame bytes in place
+    public void fillRaw(ByteBuffer frame) {
+        clear();
+        int[] reds = counts[0];
+        int[] greens = counts[1];
+        int[] blues = counts[2];
+        int limit = frame.remaining() & ~1;
+        for (int index = 0; index < limit; index += 2) {
+            int pixel = frame.getShort(index);
+            reds[(pixel >> 8) & 0xF8]++;
+            greens[(pixel >> 3) & 0xFC]++;
+            blues[(pixel << 3) & 0xF8]++;
+        }
+        pixels = limit / 2;
+    }
+
+    public void merge(ColorHistogram histogram) {
+        for (int c = 0; c < 3; ++c) {
+            for (int value = 0; value < 256; ++value) {
+                counts[c][value] += histogram.counts[c][value];
+            }
+        }
+        pixels += histogram.pixels;
+    }
+
+    public int get(Main.Channel channel, int value) {
+        return counts[channel.ordinal()][value];
+    }
+
+    public int getPixelCount() {
+        return pixels;
+    }
+
+    public double getMean(Main.Channel channel) {
+        return mean(counts[channel.ordinal()], pixels);
+    }
+
+    // The values that occur with their counts, the format of Main.getHistogram
+    public TreeMap<Integer, Integer> toTreeMap(Main.Channel channel) {
+        TreeMap<Integer, Integer> histogram = new TreeMap<>();
+        int[] values = counts[channel.ordinal()];
+        for (int value = 0; value < 256; ++value) {
+            if (values[value] > 0) {
+                histogram.put(value, values[value]);
+            }
+        }
+        return histogram;
+    }
+
+    static double mean(int[] values, long total) {
+        if (total == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int value = 0; value < values.length; ++value) {
+            sum += (long) value * values[value];
+        }
+        return (double) sum / total;
+    }
+
+}
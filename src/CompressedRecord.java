@@ -0,0 +1,380 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Random access reader for compressed RGB565 records.
+ *
+ * Layout, all big-endian: a 20 byte header (magic, width, height, frame count, frames per chunk),
+ * the chunks, the index and a 16 byte footer (index offset, chunk count, magic). A chunk holds
+ * framesPerChunk frames in the byte layout of FrameSource, the last one possibly fewer. The
+ * first frame of a chunk is stored as it is and every other frame as its byte-wise difference
+ * to the frame before, then the chunk is deflated on its own. The index gives the file offset
+ * and compressed length of every chunk, so reading a frame inflates one chunk and nothing
+ * before it. The last chunk read is kept, reading the frames in order inflates each chunk once.
+ */
+public class CompressedRecord implements Closeable {
+
+    public static final int MAGIC = 0x52355A31; // "R5Z1"
+    public static final int HEADER_SIZE = 20;
+    public static final int FOOTER_SIZE = 16;
+    public static final int INDEX_ENTRY_SIZE = 12;
+    public static final int DEFAULT_FRAMES_PER_CHUNK = 32;
+    // the largest array most VMs allocate
+    private static final int MAX_CHUNK_SIZE = Integer.MAX_VALUE - 8;
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int frameCount;
+    private final int frameSize;
+    private final int framesPerChunk;
+    private final long[] chunkOffsets;
+    private final int[] chunkLengths;
+    private final Inflater inflater = new Inflater();
+    private byte[] compressed = new byte[0];
+    private final byte[] chunk;
+    private int chunkIndex = -1;
+
+    public CompressedRecord(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(header, 0, file);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a compressed RGB565 record: " + file);
+            }
+            width = header.getInt();
+            height = header.getInt();
+            frameCount = header.getInt();
+            framesPerChunk = header.getInt();
+            if (width <= 0 || height <= 0 || frameCount < 0 || framesPerChunk <= 0) {
+                throw new IOException("Invalid header in " + file);
+            }
+            // sizes in long, a corrupt header must not overflow into a small or negative allocation
+            long frameBytes = 2L * width * height;
+            long chunkBytes = Math.min(framesPerChunk, Math.max(frameCount, 1)) * frameBytes;
+            if (chunkBytes > MAX_CHUNK_SIZE) {
+                throw new IOException("Chunks of " + chunkBytes + " bytes are too large in " + file);
+            }
+            frameSize = (int) frameBytes;
+            long size = channel.size();
+            if (size < HEADER_SIZE + FOOTER_SIZE) {
+                throw new EOFException("Truncated record: " + file);
+            }
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+            readFully(footer, size - FOOTER_SIZE, file);
+            long indexOffset = footer.getLong();
+            int chunkCount = footer.getInt();
+            if (footer.getInt() != MAGIC || chunkCount != (frameCount + framesPerChunk - 1L) / framesPerChunk
+                    || (long) chunkCount * INDEX_ENTRY_SIZE > Integer.MAX_VALUE || indexOffset < HEADER_SIZE
+                    || indexOffset > size - FOOTER_SIZE - (long) chunkCount * INDEX_ENTRY_SIZE) {
+                throw new IOException("Missing or invalid frame index in " + file);
+            }
+            ByteBuffer index = ByteBuffer.allocate(chunkCount * INDEX_ENTRY_SIZE);
+            readFully(index, indexOffset, file);
+            chunkOffsets = new long[chunkCount];
+            chunkLengths = new int[chunkCount];
+            for (int c = 0; c < chunkCount; ++c) {
+                chunkOffsets[c] = index.getLong();
+                chunkLengths[c] = index.getInt();
+                if (chunkOffsets[c] < HEADER_SIZE || chunkLengths[c] < 0
+                        || chunkOffsets[c] > indexOffset - chunkLengths[c]) {
+                    throw new IOException("Chunk " + c + " lies outside the chunks of " + file);
+                }
+            }
+            chunk = new byte[(int) chunkBytes];
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Whether the file starts like a compressed record
+    public static boolean isCompressedRecord(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            return input.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public FrameGeometry getGeometry() {
+        return new FrameGeometry(width, height);
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getFramesPerChunk() {
+        return framesPerChunk;
+    }
+
+    // Fills data the same way the text parsers do, one int per byte
+    public synchronized void readFrame(int frame, int[] data) throws IOException {
+        if (frame < 0 || frame >= frameCount) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + frameCount);
+        }
+        if (data.length != frameSize) {
+            throw new IllegalArgumentException("Expected a buffer of " + frameSize + " values");
+        }
+        loadChunk(frame / framesPerChunk);
+        int offset = (frame % framesPerChunk) * frameSize;
+        for (int i = 0; i < frameSize; ++i) {
+            data[i] = chunk[offset + i] & 0xFF;
+        }
+    }
+
+    // Sequential reader over all the frames, starting at the first one. Wrap it in a
+    // StreamingFrameReader to inflate on a thread of its own
+    public FrameReader reader() {
+        return new FrameReader() {
+
+            private int frame = 0;
+
+            @Override
+            public boolean nextFrame(int[] data) throws IOException {
+                if (frame >= frameCount) {
+                    return false;
+                }
+                readFrame(frame++, data);
+                return true;
+            }
+
+        };
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    private void loadChunk(int c) throws IOException {
+        if (c == chunkIndex) {
+            return;
+        }
+        chunkIndex = -1;
+        int length = chunkLengths[c];
+        if (compressed.length < length) {
+            compressed = new byte[length];
+        }
+        readFully(ByteBuffer.wrap(compressed, 0, length), chunkOffsets[c], null);
+        int frames = Math.min(framesPerChunk, frameCount - c * framesPerChunk);
+        int size = frames * frameSize;
+        inflater.reset();
+        inflater.setInput(compressed, 0, length);
+        try {
+            int inflated = 0;
+            while (inflated < size && !inflater.finished()) {
+                int n = inflater.inflate(chunk, inflated, size - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != size) {
+                throw new IOException("Chunk " + c + " holds " + inflated + " of " + size + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt chunk " + c, e);
+        }
+        for (int i = frameSize; i < size; ++i) {
+            chunk[i] += chunk[i - frameSize];
+        }
+        chunkIndex = c;
+    }
+
+    private void readFully(ByteBuffer buffer, long position, File file) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Truncated record" + (file != null ? ": " + file : ""));
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Writes frames into a compressed record as they come, a chunk at a time. The frame count and
+     * the index are written on close.
+     */
+    static class Writer implements Closeable {
+
+        private final FileChannel output;
+        private final int width;
+        private final int height;
+        private final int frameSize;
+        private final int framesPerChunk;
+        private final Deflater deflater;
+        private final byte[] chunk;
+        private final byte[] previous;
+        private byte[] compressed;
+        private long[] chunkOffsets = new long[16];
+        private int[] chunkLengths = new int[16];
+        private int chunks;
+        private int frames;
+        private int framesInChunk;
+
+        public Writer(File file, FrameGeometry geometry, int framesPerChunk, int level) throws IOException {
+            if (framesPerChunk < 1) {
+                throw new IllegalArgumentException("Need at least one frame per chunk, got " + framesPerChunk);
+            }
+            this.width = geometry.width;
+            this.height = geometry.height;
+            this.frameSize = geometry.getFrameSize();
+            this.framesPerChunk = framesPerChunk;
+            this.chunk = new byte[framesPerChunk * frameSize];
+            this.previous = new byte[frameSize];
+            this.compressed = new byte[chunk.length / 2 + 64];
+            this.deflater = new Deflater(level);
+            this.output = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            output.position(HEADER_SIZE);
+        }
+
+        public Writer(File file, FrameGeometry geometry) throws IOException {
+            this(file, geometry, DEFAULT_FRAMES_PER_CHUNK, Deflater.DEFAULT_COMPRESSION);
+        }
+
+        // One int per RGB565 byte, as the readers fill them
+        public void writeFrame(int[] data) throws IOException {
+            if (data.length != frameSize) {
+                throw new IllegalArgumentException("Expected a buffer of " + frameSize + " values");
+            }
+            int offset = framesInChunk * frameSize;
+            if (framesInChunk == 0) {
+                for (int i = 0; i < frameSize; ++i) {
+                    chunk[offset + i] = previous[i] = (byte) data[i];
+                }
+            } else {
+                for (int i = 0; i < frameSize; ++i) {
+                    byte value = (byte) data[i];
+                    chunk[offset + i] = (byte) (value - previous[i]);
+                    previous[i] = value;
+                }
+            }
+            frames++;
+            if (++framesInChunk == framesPerChunk) {
+                flushChunk();
+            }
+        }
+
+        public int getFrameCount() {
+            return frames;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (framesInChunk > 0) {
+                    flushChunk();
+                }
+                long indexOffset = output.position();
+                ByteBuffer index = ByteBuffer.allocate(chunks * INDEX_ENTRY_SIZE + FOOTER_SIZE);
+                for (int c = 0; c < chunks; ++c) {
+                    index.putLong(chunkOffsets[c]).putInt(chunkLengths[c]);
+                }
+                index.putLong(indexOffset).putInt(chunks).putInt(MAGIC);
+                index.flip();
+                writeFully(index);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(width).putInt(height).putInt(frames).putInt(framesPerChunk);
+                header.flip();
+                output.position(0);
+                writeFully(header);
+            } finally {
+                deflater.end();
+                output.close();
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            deflater.reset();
+            deflater.setInput(chunk, 0, framesInChunk * frameSize);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            if (chunks == chunkOffsets.length) {
+                chunkOffsets = Arrays.copyOf(chunkOffsets, 2 * chunks);
+                chunkLengths = Arrays.copyOf(chunkLengths, 2 * chunks);
+            }
+            chunkOffsets[chunks] = output.position();
+            chunkLengths[chunks] = length;
+            chunks++;
+            writeFully(ByteBuffer.wrap(compressed, 0, length));
+            framesInChunk = 0;
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                output.write(buffer);
+            }
+        }
+
+    }
+
+    public static int convert(FrameReader reader, File out, FrameGeometry geometry, int framesPerChunk)
+            throws IOException {
+        int[] data = new int[geometry.getFrameSize()];
+        try (Writer writer = new Writer(out, geometry, framesPerChunk, Deflater.DEFAULT_COMPRESSION)) {
+            // a trailing partial frame is dropped, as the text readers do
+            while (reader.nextFrame(data)) {
+                writer.writeFrame(data);
+            }
+            return writer.getFrameCount();
+        }
+    }
+
+    // Converts a text record, or a binary record when the input is one
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 3 && args.length != 5) {
+            System.out.println("Usage: CompressedRecord <text or binary record> <compressed record> "
+                    + "[frames per chunk] [width height]");
+            return;
+        }
+        int framesPerChunk = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_FRAMES_PER_CHUNK;
+        int width = args.length == 5 ? Integer.parseInt(args[3]) : Main.WIDTH;
+        int height = args.length == 5 ? Integer.parseInt(args[4]) : Main.HEIGHT;
+        File in = new File(args[0]);
+        File out = new File(args[1]);
+        int frames;
+        try (DataInputStream input = new DataInputStream(new FileInputStream(in))) {
+            boolean binary = in.length() >= FrameSource.HEADER_SIZE && input.readInt() == FrameSource.MAGIC;
+            if (binary) {
+                try (FrameSource source = new FrameSource(in)) {
+                    frames = convert(source.reader(), out, source.getGeometry(), framesPerChunk);
+                }
+            } else {
+                try (RecordTokenizer tokenizer = new RecordTokenizer(new BufferedInputStream(new FileInputStream(in)))) {
+                    frames = convert(tokenizer, out, new FrameGeometry(width, height), framesPerChunk);
+                }
+            }
+        }
+        System.out.println("Compressed " + frames + " frames, " + in.length() + " to " + out.length() + " bytes");
+    }
+
+}
@@ -0,0 +1,53 @@
+/**
+ * Detection state and scratch buffers for one frame resolution, allocated once and reused for
+ * every frame. A context is owned by a single thread, each worker or stream has its own.
+ */
+public class DetectionContext {
+
+    final FrameGeometry geometry;
+    final int[] data;
+    final PackedImage image;
+    final PackedImage median;
+    final PackedImage binary;
+    final PackedImage granularity;
+    final BinaryMask mask;
+    final BinaryMask filtered;
+    final Distribution distribution;
+    final BlobDetector blobs;
+    final ColorHistogram histogram = new ColorHistogram();
+    // per channel by ordinal, for Main.detectAll
+    final BinaryMask[] channelMasks = new BinaryMask[3];
+    final BinaryMask[] channelFiltered = new BinaryMask[3];
+    // splits the filters of each frame over several threads, null runs them on the calling thread
+    TiledExecutor tiles;
+    // false thresholds the raw frame through ChromaTable, skipping the decoded image and the median
+    boolean medianFilter = true;
+    ChannelKernels kernels = ChannelKernels.DEFAULT;
+    // stage latencies and counters, null records nothing
+    PipelineMetrics metrics;
+    // Main.detect adds every frame's histogram to the recording's, null skips the histograms
+    RunningHistogram recording;
+    // threshold with recording.getThreshold instead of the fixed thresholds, on every path
+    boolean adaptiveThreshold;
+    // runs the distribution search coarse to fine, null searches the whole frame. Connected
+    // components always label the whole mask, which is faster than cutting it into regions
+    PyramidDetector pyramid;
+
+    public DetectionContext(FrameGeometry geometry) {
+        this.geometry = geometry;
+        this.data = new int[geometry.getFrameSize()];
+        this.image = new PackedImage(geometry.width, geometry.height);
+        this.median = new PackedImage(geometry.width, geometry.height);
+        this.binary = new PackedImage(geometry.width, geometry.height);
+        this.granularity = new PackedImage(geometry.width, geometry.height);
+        this.mask = new BinaryMask(geometry.width, geometry.height);
+        this.filtered = new BinaryMask(geometry.width, geometry.height);
+        this.distribution = new Distribution(geometry.width, geometry.height);
+        this.blobs = new BlobDetector(geometry.width, geometry.height);
+        for (int c = 0; c < 3; ++c) {
+            channelMasks[c] = new BinaryMask(geometry.width, geometry.height);
+            channelFiltered[c] = new BinaryMask(geometry.width, geometry.height);
+        }
+    }
+
+}
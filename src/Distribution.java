@@ -0,0 +1,137 @@
+/**
+ * For every lit pixel of a mask, the extent of the vertical and horizontal runs of lit pixels
+ * through it, which is the rectangle the detection search climbs on.
+ *
+ * The runs are found with one prefix and one suffix sweep per direction, O(W * H) in total,
+ * and after a rectangle is cleared only the rows and columns it touched are swept again.
+ * As in the original ray casting, a run stops one pixel short of the frame border unless the
+ * pixel itself lies on it. Unlit pixels get an empty rectangle centered on themselves.
+ */
+public class Distribution {
+
+    final int width;
+    final int height;
+    final int[] top;
+    final int[] bottom;
+    final int[] left;
+    final int[] right;
+
+    public Distribution(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int size = width * height;
+        this.top = new int[size];
+        this.bottom = new int[size];
+        this.left = new int[size];
+        this.right = new int[size];
+    }
+
+    public void compute(BinaryMask mask) {
+        updateColumns(mask, 0, width - 1);
+        updateRows(mask, 0, height - 1);
+    }
+
+    // Sweeps again the rows and columns crossing [x0, x1] x [y0, y1] after the mask changed there
+    public void update(BinaryMask mask, int x0, int y0, int x1, int y1) {
+        updateColumns(mask, Math.max(x0, 0), Math.min(x1, width - 1));
+        updateRows(mask, Math.max(y0, 0), Math.min(y1, height - 1));
+    }
+
+    private void updateColumns(BinaryMask mask, int x0, int x1) {
+        for (int x = x0; x <= x1; ++x) {
+            int start = 0;
+            for (int y = 0; y < height; ++y) {
+                int index = y * width + x;
+                if (!mask.get(x, y)) {
+                    top[index] = y;
+                    start = y + 1;
+                } else {
+                    top[index] = y == 0 ? 0 : Math.max(1, start);
+                }
+            }
+            int end = height - 1;
+            for (int y = height - 1; y >= 0; --y) {
+                int index = y * width + x;
+                if (!mask.get(x, y)) {
+                    bottom[index] = y;
+                    end = y - 1;
+                } else {
+                    bottom[index] = y == height - 1 ? y : Math.min(height - 2, end);
+                }
+            }
+        }
+    }
+
+    private void updateRows(BinaryMask mask, int y0, int y1) {
+        for (int y = y0; y <= y1; ++y) {
+            int row = y * width;
+            int start = 0;
+            for (int x = 0; x < width; ++x) {
+                if (!mask.get(x, y)) {
+                    left[row + x] = x;
+                    start = x + 1;
+                } else {
+                    left[row + x] = x == 0 ? 0 : Math.max(1, start);
+                }
+            }
+            int end = width - 1;
+            for (int x = width - 1; x >= 0; --x) {
+                if (!mask.get(x, y)) {
+                    right[row + x] = x;
+                    end = x - 1;
+                } else {
+                    right[row + x] = x == width - 1 ? x : Math.min(width - 2, end);
+                }
+            }
+        }
+    }
+
+    public int getW(int index) {
+        return right[index] - left[index];
+    }
+
+    public int getH(int index) {
+        return bottom[index] - top[index];
+    }
+
+    public int getX(int index) {
+        return left[index] + getW(index) / 2;
+    }
+
+    public int getY(int index) {
+        return top[index] + getH(index) / 2;
+    }
+
+    public int getArea(int index) {
+        return getW(index) * getH(index);
+    }
+
+    public Main.Rect getRect(int index) {
+        Main.Rect rect = new Main.Rect();
+        rect.x = getX(index);
+        rect.y = getY(index);
+        rect.w = getW(index);
+        rect.h = getH(index);
+        return rect;
+    }
+
+    // Area of every lit pixel scaled to 0..255 in the given channel
+    public void toImage(BinaryMask mask, Main.Channel channel, PackedImage distribution) {
+        int[] absolutes = distribution.pixels;
+        int max = 0;
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int index = y * width + x;
+                absolutes[index] = mask.get(x, y) ? getArea(index) : 0;
+                if (absolutes[index] > max) {
+                    max = absolutes[index];
+                }
+            }
+        }
+        for (int i = 0; i < absolutes.length; ++i) {
+            int color = (int)(255.0 * ((double)absolutes[i] / max));
+            absolutes[i] = color << channel.shift;
+        }
+    }
+
+}
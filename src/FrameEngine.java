@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Processes the frames of a recording on several threads and reports them in frame order.
+ *
+ * A reader thread fills raw buffers taken from a fixed pool and queues them, each worker owns a
+ * DetectionContext and runs the detection chain, and the calling thread puts the results back
+ * in order before handing them to the listener. The pool holds queueCapacity + parallelism
+ * buffers and a buffer only goes back to it after the listener had its frame, so the reader
+ * blocks when the workers or the listener fall behind.
+ */
+public class FrameEngine {
+
+    interface FrameListener {
+
+        void onFrame(int frame, List<Main.Rect> rects);
+
+    }
+
+    private static class Task {
+
+        final int frame;
+        final int[] data;
+
+        Task(int frame, int[] data) {
+            this.frame = frame;
+            this.data = data;
+        }
+
+    }
+
+    private static class Result {
+
+        final int frame;
+        final List<Main.Rect> rects;
+        final Throwable error;
+        // the frame's buffer, back to the pool once the listener had the frame
+        final int[] data;
+
+        Result(int frame, List<Main.Rect> rects, Throwable error, int[] data) {
+            this.frame = frame;
+            this.rects = rects;
+            this.error = error;
+            this.data = data;
+        }
+
+    }
+
+    private static final Task END_OF_FRAMES = new Task(-1, null);
+
+    final FrameGeometry geometry;
+    final int parallelism;
+    final int queueCapacity;
+    final Main.Channel channel;
+    final Main.DetectionStrategy strategy;
+    // passed on to the context of every worker
+    boolean medianFilter = true;
+    PipelineMetrics metrics;
+    // shared by the workers, each adds the histograms of its frames
+    RunningHistogram recording;
+    // threshold every frame with recording.getThreshold, see DetectionContext
+    boolean adaptiveThreshold;
+    // shared by the workers, splits the filters of each frame into bands on its pool
+    TiledExecutor tiles;
+    // levels of the coarse to fine search, each worker gets its own PyramidDetector. 0 searches the whole frame
+    int pyramidLevels;
+
+    public FrameEngine(FrameGeometry geometry, int parallelism, int queueCapacity,
+                       Main.Channel channel, Main.DetectionStrategy strategy) {
+        if (parallelism < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Parallelism and queue capacity must be positive");
+        }
+        this.geometry = geometry;
+        this.parallelism = parallelism;
+        this.queueCapacity = queueCapacity;
+        this.channel = channel;
+        this.strategy = strategy;
+    }
+
+    public FrameEngine(FrameGeometry geometry, Main.Channel channel, Main.DetectionStrategy strategy) {
+        this(geometry, Runtime.getRuntime().availableProcessors(), 2 * Runtime.getRuntime().availableProcessors(),
+                channel, strategy);
+    }
+
+    // Returns the number of frames processed
+    public int run(FrameReader reader, FrameListener listener) throws IOException, InterruptedException {
+        BlockingQueue<int[]> free = new ArrayBlockingQueue<>(queueCapacity + parallelism);
+        for (int i = 0; i < queueCapacity + parallelism; ++i) {
+            free.add(new int[geometry.getFrameSize()]);
+        }
+        BlockingQueue<Task> tasks = new ArrayBlockingQueue<>(queueCapacity + parallelism);
+        // every result holds a pool buffer, plus room for the frame count and a reader error
+        BlockingQueue<Result> results = new ArrayBlockingQueue<>(queueCapacity + parallelism + 2);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism + 1, runnable -> {
+            Thread thread = new Thread(runnable, "frame-engine");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            executor.execute(() -> read(reader, free, tasks, results));
+            for (int i = 0; i < parallelism; ++i) {
+                executor.execute(() -> work(tasks, results));
+            }
+            return sequence(free, results, listener);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void read(FrameReader reader, BlockingQueue<int[]> free, BlockingQueue<Task> tasks,
+                      BlockingQueue<Result> results) {
+        int frame = 0;
+        try {
+            while (true) {
+                int[] data = free.take();
+                if (!reader.nextFrame(data)) {
+                    break;
+                }
+                tasks.put(new Task(frame++, data));
+            }
+            for (int i = 0; i < parallelism; ++i) {
+                tasks.put(END_OF_FRAMES);
+            }
+            // frame count, so the sequencer knows when it is done
+            results.put(new Result(-1 - frame, null, null, null));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            results.add(new Result(frame, null, e, null));
+        }
+    }
+
+    private void work(BlockingQueue<Task> tasks, BlockingQueue<Result> results) {
+        DetectionContext context = new DetectionContext(geometry);
+        context.medianFilter = medianFilter;
+        context.metrics = metrics;
+        context.recording = recording;
+        context.adaptiveThreshold = adaptiveThreshold;
+        context.tiles = tiles;
+        context.pyramid = pyramidLevels > 0 ? new PyramidDetector(geometry, pyramidLevels) : null;
+        try {
+            while (true) {
+                Task task = tasks.take();
+                if (task == END_OF_FRAMES) {
+                    return;
+                }
+                Result result;
+                try {
+                    result = new Result(task.frame, Main.detect(context, task.data, channel, strategy), null, task.data);
+                } catch (Throwable e) {
+                    result = new Result(task.frame, null, e, task.data);
+                }
+                results.put(result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int sequence(BlockingQueue<int[]> free, BlockingQueue<Result> results, FrameListener listener)
+            throws IOException, InterruptedException {
+        Map<Integer, Result> pending = new HashMap<>();
+        int next = 0;
+        int total = -1;
+        while (total < 0 || next < total) {
+            Result result = results.take();
+            if (result.error != null) {
+                if (result.error instanceof IOException) {
+                    throw (IOException) result.error;
+                }
+                throw new IllegalStateException("Frame " + result.frame + " failed", result.error);
+            }
+            if (result.frame < 0) {
+                total = -1 - result.frame;
+                continue;
+            }
+            pending.put(result.frame, result);
+            while (pending.containsKey(next)) {
+                Result ready = pending.remove(next);
+                listener.onFrame(next, ready.rects);
+                // only now may the reader refill it, so a slow listener holds the reader back
+                free.put(ready.data);
+                next++;
+            }
+        }
+        return next;
+    }
+
+}
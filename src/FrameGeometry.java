@@ -0,0 +1,47 @@
+/**
+ * Frame dimensions of a recording, either read from a record header or configured for text records.
+ */
+public class FrameGeometry {
+
+    public static final FrameGeometry DEFAULT = new FrameGeometry(Main.WIDTH, Main.HEIGHT);
+
+    final int width;
+    final int height;
+
+    public FrameGeometry(int width, int height) {
+        if (width < 3 || height < 3) {
+            throw new IllegalArgumentException("Frames must be at least 3x3, got " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getPixelCount() {
+        return width * height;
+    }
+
+    // values per frame in the raw RGB565 buffers, two bytes per pixel
+    public int getFrameSize() {
+        return 2 * width * height;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof FrameGeometry)) {
+            return false;
+        }
+        FrameGeometry geometry = (FrameGeometry) o;
+        return width == geometry.width && height == geometry.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * width + height;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height;
+    }
+
+}
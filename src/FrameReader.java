@@ -0,0 +1,11 @@
+import java.io.IOException;
+
+/**
+ * Sequential source of raw frames, one int per RGB565 byte as getImage expects.
+ */
+public interface FrameReader {
+
+    // Fills the whole buffer, returns false once no complete frame is left
+    boolean nextFrame(int[] data) throws IOException;
+
+}
@@ -0,0 +1,293 @@
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ring of RGB565 frame slots in a memory mapped file, written by one producer and read by any
+ * number of consumers, in the same process or in others mapping the same file.
+ *
+ * Layout: a header (magic, width, height, slot count, then the cursor, claim and closed
+ * counters, each on a cache line of its own) followed by the slots. A slot is a sequence stamp
+ * followed by the frame bytes in the layout of FrameSource. All counters are longs accessed
+ * through a VarHandle view of the mapping, there are no locks.
+ *
+ * The producer never waits: frame s goes to slot s % slotCount, its stamp is set to ~s while
+ * the bytes are written and to s once they are, then the cursor is moved past s. Consumers
+ * share the frames, each claims the next sequence from the claim counter and waits for the
+ * cursor to pass it. The frame is read in place, and as the producer may have come round and
+ * overwritten it in the meantime, isValid tells afterwards whether what was read is still
+ * frame s. Frames overwritten before or while they were read count as dropped.
+ */
+public class FrameRing implements Closeable {
+
+    public static final int MAGIC = 0x52494E47; // "RING"
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 8;
+    private static final int SLOTS = 12;
+    private static final int CURSOR = 64;
+    private static final int CLAIM = 128;
+    private static final int CLOSED = 192;
+    private static final int HEADER_SIZE = 256;
+    // the frame bytes start a cache line after the stamp
+    private static final int SLOT_HEADER_SIZE = 64;
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final int slotCount;
+    private final int frameSize;
+    private final int slotSize;
+    // next sequence the producer writes, only used by the producer
+    private long next;
+    private final LongAdder dropped = new LongAdder();
+
+    private FrameRing(FileChannel channel, MappedByteBuffer buffer, int width, int height, int slotCount) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.width = width;
+        this.height = height;
+        this.slotCount = slotCount;
+        this.frameSize = 2 * width * height;
+        this.slotSize = slotSize(frameSize);
+    }
+
+    // Creates the ring for its producer, a ring left in the file is overwritten
+    public static FrameRing create(File file, FrameGeometry geometry, int slotCount) throws IOException {
+        if (slotCount < 2) {
+            throw new IllegalArgumentException("Need at least two slots, got " + slotCount);
+        }
+        long size = HEADER_SIZE + (long) slotCount * slotSize(geometry.getFrameSize());
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A ring is limited to 2GB, " + slotCount + " slots of "
+                    + geometry + " need " + size + " bytes");
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(WIDTH, geometry.width);
+            buffer.putInt(HEIGHT, geometry.height);
+            buffer.putInt(SLOTS, slotCount);
+            FrameRing ring = new FrameRing(channel, buffer, geometry.width, geometry.height, slotCount);
+            for (int slot = 0; slot < slotCount; ++slot) {
+                LONGS.setRelease(buffer, ring.stampOffset(slot), -1L);
+            }
+            LONGS.setRelease(buffer, CURSOR, 0L);
+            LONGS.setRelease(buffer, CLAIM, 0L);
+            LONGS.setRelease(buffer, CLOSED, 0L);
+            // consumers only open the ring once the magic is there, after everything else
+            VarHandle.releaseFence();
+            buffer.putInt(0, MAGIC);
+            return ring;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Opens the ring of a running producer for consuming
+    public static FrameRing open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a frame ring: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a frame ring: " + file);
+            }
+            VarHandle.acquireFence();
+            int width = buffer.getInt(WIDTH);
+            int height = buffer.getInt(HEIGHT);
+            int slotCount = buffer.getInt(SLOTS);
+            if (width <= 0 || height <= 0 || slotCount < 2
+                    || channel.size() < HEADER_SIZE + (long) slotCount * slotSize(2 * width * height)) {
+                throw new IOException("Invalid header in " + file);
+            }
+            return new FrameRing(channel, buffer, width, height, slotCount);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public FrameGeometry getGeometry() {
+        return new FrameGeometry(width, height);
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    // Frames published so far
+    public long getCursor() {
+        return (long) LONGS.getAcquire(buffer, CURSOR);
+    }
+
+    // Frames this instance claimed but found overwritten
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    // Producer side: copies a frame of one int per RGB565 byte into the next slot, returns its sequence
+    public long publish(int[] data) {
+        if (data.length != frameSize) {
+            throw new IllegalArgumentException("Expected a buffer of " + frameSize + " values");
+        }
+        long sequence = next;
+        ByteBuffer slot = beginWrite(sequence);
+        for (int i = 0; i < frameSize; ++i) {
+            slot.put(i, (byte) data[i]);
+        }
+        endWrite(sequence);
+        return sequence;
+    }
+
+    // Producer side: copies the frame bytes, e.g. from FrameSource.getFrame, into the next slot
+    public long publish(ByteBuffer frame) {
+        if (frame.remaining() != frameSize) {
+            throw new IllegalArgumentException("Expected a frame of " + frameSize + " bytes");
+        }
+        long sequence = next;
+        ByteBuffer slot = beginWrite(sequence);
+        slot.put(frame.duplicate());
+        endWrite(sequence);
+        return sequence;
+    }
+
+    // Producer side: no more frames, consumers return -1 once they have taken the rest
+    public void finish() {
+        LONGS.setRelease(buffer, CLOSED, 1L);
+    }
+
+    // Consumer side: claims the next frame and waits until it is published, -1 once the producer finished
+    public long next() {
+        while (true) {
+            long sequence = (long) LONGS.getAndAdd(buffer, CLAIM, 1L);
+            int spins = 0;
+            long cursor;
+            while ((cursor = (long) LONGS.getAcquire(buffer, CURSOR)) <= sequence) {
+                if ((long) LONGS.getAcquire(buffer, CLOSED) != 0 && (long) LONGS.getAcquire(buffer, CURSOR) <= sequence) {
+                    return -1;
+                }
+                if (++spins < SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            }
+            // the producer may already be writing this slot again
+            if (cursor - sequence < slotCount) {
+                return sequence;
+            }
+            dropped.increment();
+        }
+    }
+
+    // Consumer side: the frame bytes of the sequence in place, null if it was overwritten already.
+    // Check isValid after reading them
+    public ByteBuffer frame(long sequence) {
+        int slot = (int) (sequence % slotCount);
+        if ((long) LONGS.getAcquire(buffer, stampOffset(slot)) != sequence) {
+            dropped.increment();
+            return null;
+        }
+        return slice(slot).asReadOnlyBuffer();
+    }
+
+    // Consumer side: whether the bytes read from frame(sequence) were all of that frame
+    public boolean isValid(long sequence) {
+        VarHandle.acquireFence();
+        if ((long) LONGS.getOpaque(buffer, stampOffset((int) (sequence % slotCount))) == sequence) {
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer beginWrite(long sequence) {
+        int slot = (int) (sequence % slotCount);
+        LONGS.setOpaque(buffer, stampOffset(slot), ~sequence);
+        // a consumer that sees any of the new bytes sees the stamp change
+        VarHandle.storeStoreFence();
+        return slice(slot);
+    }
+
+    private void endWrite(long sequence) {
+        LONGS.setRelease(buffer, stampOffset((int) (sequence % slotCount)), sequence);
+        LONGS.setRelease(buffer, CURSOR, sequence + 1);
+        next = sequence + 1;
+    }
+
+    private ByteBuffer slice(int slot) {
+        int offset = stampOffset(slot) + SLOT_HEADER_SIZE;
+        return buffer.slice(offset, frameSize);
+    }
+
+    private int stampOffset(int slot) {
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    private static int slotSize(int frameSize) {
+        return (SLOT_HEADER_SIZE + frameSize + 63) / 64 * 64;
+    }
+
+    // Plays a record into the ring at a fixed frame rate, standing in for the camera
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: FrameRing <ring file> <binary or compressed record> [fps] [slots] [loops]");
+            return;
+        }
+        File ringFile = new File(args[0]);
+        File recordFile = new File(args[1]);
+        int fps = args.length > 2 ? Integer.parseInt(args[2]) : 25;
+        int slots = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        int loops = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        long period = 1_000_000_000L / fps;
+        boolean compressed = CompressedRecord.isCompressedRecord(recordFile);
+        try (FrameSource source = compressed ? null : new FrameSource(recordFile);
+             CompressedRecord record = compressed ? new CompressedRecord(recordFile) : null) {
+            FrameGeometry geometry = compressed ? record.getGeometry() : source.getGeometry();
+            int frames = compressed ? record.getFrameCount() : source.getFrameCount();
+            int[] data = new int[geometry.getFrameSize()];
+            try (FrameRing ring = create(ringFile, geometry, slots)) {
+                long start = System.nanoTime();
+                for (int loop = 0; loop < loops; ++loop) {
+                    for (int frame = 0; frame < frames; ++frame) {
+                        long sequence = ring.next;
+                        long wait = start + sequence * period - System.nanoTime();
+                        if (wait > 0) {
+                            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                        }
+                        if (compressed) {
+                            record.readFrame(frame, data);
+                            ring.publish(data);
+                        } else {
+                            ring.publish(source.getFrame(frame));
+                        }
+                    }
+                }
+                ring.finish();
+                System.out.println("Published " + ring.getCursor() + " frames of " + geometry);
+            }
+        }
+    }
+
+}
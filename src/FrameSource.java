@@ -0,0 +1,180 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access reader for binary RGB565 records.
+ *
+ * Layout: a 16 byte big-endian header (magic, width, height, frame count) followed by
+ * frameCount frames of width * height pixels, two bytes per pixel (high byte first),
+ * which is the same byte order the text records use.
+ */
+public class FrameSource implements Closeable {
+
+    public static final int MAGIC = 0x52353635; // "R565"
+    public static final int HEADER_SIZE = 16;
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int frameCount;
+    private final int frameSize;
+    private final int framesPerSegment;
+    private final MappedByteBuffer[] segments;
+
+    public FrameSource(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Truncated header in " + file);
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a RGB565 record: " + file);
+            }
+            width = header.getInt();
+            height = header.getInt();
+            frameCount = header.getInt();
+            // in long, a corrupt header must not overflow into a small or negative frame size
+            long frameBytes = 2L * width * height;
+            if (width <= 0 || height <= 0 || frameCount < 0 || frameBytes > Integer.MAX_VALUE) {
+                throw new IOException("Invalid header in " + file);
+            }
+            frameSize = (int) frameBytes;
+            if (channel.size() < HEADER_SIZE + (long) frameSize * frameCount) {
+                throw new IOException("Truncated record: " + file);
+            }
+            // A single mapping is limited to 2GB, so big captures are split on frame boundaries
+            framesPerSegment = Math.max(1, Math.min(frameCount, Integer.MAX_VALUE / frameSize));
+            int segmentCount = (frameCount + framesPerSegment - 1) / framesPerSegment;
+            segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; ++i) {
+                long offset = HEADER_SIZE + (long) i * framesPerSegment * frameSize;
+                int frames = Math.min(framesPerSegment, frameCount - i * framesPerSegment);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) frames * frameSize);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public FrameGeometry getGeometry() {
+        return new FrameGeometry(width, height);
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    // Read only view over the RGB565 bytes of a frame, no copy involved
+    public ByteBuffer getFrame(int frame) {
+        if (frame < 0 || frame >= frameCount) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + frameCount);
+        }
+        ByteBuffer segment = segments[frame / framesPerSegment].duplicate();
+        int offset = (frame % framesPerSegment) * frameSize;
+        segment.position(offset);
+        segment.limit(offset + frameSize);
+        return segment.slice();
+    }
+
+    // Fills data the same way the text parsers do, one int per byte
+    public void readFrame(int frame, int[] data) {
+        if (data.length != frameSize) {
+            throw new IllegalArgumentException("Expected a buffer of " + frameSize + " values");
+        }
+        ByteBuffer buffer = getFrame(frame);
+        for (int i = 0; i < frameSize; ++i) {
+            data[i] = buffer.get(i) & 0xFF;
+        }
+    }
+
+    // Sequential reader over all the frames, starting at the first one
+    public FrameReader reader() {
+        return new FrameReader() {
+
+            private int frame = 0;
+
+            @Override
+            public boolean nextFrame(int[] data) {
+                if (frame >= frameCount) {
+                    return false;
+                }
+                readFrame(frame++, data);
+                return true;
+            }
+
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static int convert(InputStream text, File out, int width, int height) throws IOException {
+        long frameBytes = 2L * width * height;
+        if (width <= 0 || height <= 0 || frameBytes > Integer.MAX_VALUE) {
+            throw new IOException("Invalid geometry " + width + "x" + height);
+        }
+        int frameSize = (int) frameBytes;
+        int frames = 0;
+        try (FileChannel output = FileChannel.open(out.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(frameSize);
+            output.position(HEADER_SIZE);
+            RecordTokenizer tokenizer = new RecordTokenizer(text);
+            int[] data = new int[frameSize];
+            // a trailing partial frame is dropped, as the text readers do
+            while (tokenizer.nextFrame(data)) {
+                buffer.clear();
+                for (int i = 0; i < frameSize; ++i) {
+                    buffer.put((byte) data[i]);
+                }
+                buffer.flip();
+                writeFully(output, buffer);
+                frames++;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(width).putInt(height).putInt(frames);
+            header.flip();
+            output.position(0);
+            writeFully(output, header);
+        }
+        return frames;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 4) {
+            System.out.println("Usage: FrameSource <text record> <binary record> [width height]");
+            return;
+        }
+        int width = args.length == 4 ? Integer.parseInt(args[2]) : Main.WIDTH;
+        int height = args.length == 4 ? Integer.parseInt(args[3]) : Main.HEIGHT;
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(args[0]))) {
+            int frames = convert(inputStream, new File(args[1]), width, height);
+            System.out.println("Converted " + frames + " frames");
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets, in the style of HdrHistogram.
+ *
+ * Every power of two range is split into 32 equal buckets, so a recorded value is known to
+ * within about 3% up to any size with under 2000 counters. Recording is a few atomic increments
+ * and takes no lock, so several threads can record into the same histogram.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    static class Snapshot {
+
+        final long count;
+        final long min;
+        final long max;
+        final double mean;
+        private final long[] counts;
+
+        Snapshot(long[] counts, long count, long min, long max, long sum) {
+            this.counts = counts;
+            this.count = count;
+            this.min = count == 0 ? 0 : min;
+            this.max = max;
+            this.mean = count == 0 ? 0 : (double) sum / count;
+        }
+
+        // Highest value of the bucket holding the given percentile, at most max
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int index = 0; index < counts.length; ++index) {
+                seen += counts[index];
+                if (seen >= target) {
+                    return Math.min(highestValue(index), max);
+                }
+            }
+            return max;
+        }
+
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(0);
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(index(value));
+        sum.add(value);
+        if (value < min.get()) {
+            min.accumulateAndGet(value, Math::min);
+        }
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    // Adds the values recorded in histogram, e.g. to combine the metrics of several pipelines
+    public void merge(LatencyHistogram histogram) {
+        for (int i = 0; i < BUCKETS; ++i) {
+            long count = histogram.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        sum.add(histogram.sum.sum());
+        min.accumulateAndGet(histogram.min.get(), Math::min);
+        max.accumulateAndGet(histogram.max.get(), Math::max);
+    }
+
+    // Not atomic with concurrent recording, a snapshot may miss the values being recorded
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, min.get(), max.get(), sum.sum());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int bucket = exponent - SUB_BITS + 1;
+        int sub = (int) (value >>> (exponent - SUB_BITS)) - SUB_BUCKETS;
+        return bucket * SUB_BUCKETS + sub;
+    }
+
+    static long highestValue(int index) {
+        int bucket = index / SUB_BUCKETS;
+        long sub = index % SUB_BUCKETS;
+        if (bucket == 0) {
+            return sub;
+        }
+        long lowest = (SUB_BUCKETS + sub) << (bucket - 1);
+        return lowest + (1L << (bucket - 1)) - 1;
+    }
+
+}
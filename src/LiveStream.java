@@ -0,0 +1,241 @@
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.List;
+
+/**
+ * Runs detection on frames from a live source as they arrive, with a fixed per-frame deadline.
+ *
+ * A reader thread takes frames off the source while the calling thread runs the detection chain,
+ * with one frame slot between them. Frames are numbered in arrival order and that number is what
+ * the listener gets, so the gaps are the dropped frames. A frame that waited longer than the
+ * deadline before detection could start is dropped as stale. The drop policy decides what
+ * happens when the detector falls behind:
+ *
+ * LATEST_ONLY - a new frame replaces the one waiting in the slot, detection always runs on the
+ * newest frame.
+ * SKIP_N - a new frame is dropped while the slot is taken, and after a frame finishes past its
+ * deadline the next skip frames are dropped so the detector can catch up.
+ */
+public class LiveStream {
+
+    enum DropPolicy {
+        LATEST_ONLY,
+        SKIP_N
+    }
+
+    final FrameGeometry geometry;
+    final long deadlineNanos;
+    final DropPolicy policy;
+    final int skip;
+    final Main.Channel channel;
+    final Main.DetectionStrategy strategy;
+    // also counts the dropped frames, null records nothing
+    PipelineMetrics metrics;
+
+    private int[] pending;
+    private int pendingFrame = -1;
+    private long pendingArrival;
+    private boolean finished;
+    private Throwable error;
+    private int toSkip;
+    private int received;
+    private int processed;
+    private int dropped;
+    private int late;
+
+    public LiveStream(FrameGeometry geometry, long deadlineMillis, DropPolicy policy, int skip,
+                      Main.Channel channel, Main.DetectionStrategy strategy) {
+        if (deadlineMillis <= 0 || skip < 0) {
+            throw new IllegalArgumentException("Deadline must be positive and skip not negative");
+        }
+        this.geometry = geometry;
+        this.deadlineNanos = deadlineMillis * 1_000_000L;
+        this.policy = policy;
+        this.skip = skip;
+        this.channel = channel;
+        this.strategy = strategy;
+    }
+
+    public LiveStream(FrameGeometry geometry, long deadlineMillis, DropPolicy policy) {
+        this(geometry, deadlineMillis, policy, 1, Main.Channel.RED, Main.DetectionStrategy.DISTRIBUTION);
+    }
+
+    // Returns when the source ends, the number of frames detected
+    public int run(FrameReader reader, FrameEngine.FrameListener listener) throws IOException, InterruptedException {
+        synchronized (this) {
+            pending = new int[geometry.getFrameSize()];
+            pendingFrame = -1;
+            finished = false;
+            error = null;
+            toSkip = 0;
+            received = processed = dropped = late = 0;
+        }
+        Thread thread = new Thread(() -> read(reader), "live-stream-reader");
+        thread.setDaemon(true);
+        thread.start();
+        DetectionContext context = new DetectionContext(geometry);
+        context.metrics = metrics;
+        int[] data = context.data;
+        try {
+            while (true) {
+                int frame;
+                long arrival;
+                synchronized (this) {
+                    while (pendingFrame < 0 && !finished) {
+                        wait();
+                    }
+                    if (error != null) {
+                        if (error instanceof IOException) {
+                            throw (IOException) error;
+                        }
+                        throw new IllegalStateException("Reading frame " + received + " failed", error);
+                    }
+                    if (pendingFrame < 0) {
+                        return processed;
+                    }
+                    int[] swap = pending;
+                    pending = data;
+                    data = swap;
+                    frame = pendingFrame;
+                    arrival = pendingArrival;
+                    pendingFrame = -1;
+                    if (System.nanoTime() - arrival > deadlineNanos) {
+                        drop();
+                        continue;
+                    }
+                }
+                List<Main.Rect> rects = Main.detect(context, data, channel, strategy);
+                long elapsed = System.nanoTime() - arrival;
+                synchronized (this) {
+                    processed++;
+                    if (elapsed > deadlineNanos) {
+                        late++;
+                        if (policy == DropPolicy.SKIP_N) {
+                            toSkip = skip;
+                        }
+                    }
+                }
+                listener.onFrame(frame, rects);
+            }
+        } finally {
+            thread.interrupt();
+        }
+    }
+
+    private void read(FrameReader reader) {
+        int[] filling = new int[geometry.getFrameSize()];
+        try {
+            while (!Thread.currentThread().isInterrupted() && reader.nextFrame(filling)) {
+                synchronized (this) {
+                    int frame = received++;
+                    if (toSkip > 0 || (pendingFrame >= 0 && policy == DropPolicy.SKIP_N)) {
+                        if (toSkip > 0) {
+                            toSkip--;
+                        }
+                        drop();
+                        continue;
+                    }
+                    if (pendingFrame >= 0) {
+                        drop();
+                    }
+                    int[] swap = pending;
+                    pending = filling;
+                    filling = swap;
+                    pendingFrame = frame;
+                    pendingArrival = System.nanoTime();
+                    notifyAll();
+                }
+            }
+        } catch (Throwable e) {
+            synchronized (this) {
+                error = e;
+            }
+        } finally {
+            synchronized (this) {
+                finished = true;
+                notifyAll();
+            }
+        }
+    }
+
+    // Called holding the lock
+    private void drop() {
+        dropped++;
+        if (metrics != null) {
+            metrics.drop();
+        }
+    }
+
+    public synchronized int getReceived() {
+        return received;
+    }
+
+    public synchronized int getProcessed() {
+        return processed;
+    }
+
+    public synchronized int getDropped() {
+        return dropped;
+    }
+
+    // Frames detected but finished after their deadline
+    public synchronized int getLate() {
+        return late;
+    }
+
+    // Plays a text record into a pipe at a fixed frame rate and runs the live stream on it
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: LiveStream <text record> [fps] [deadline ms] [LATEST_ONLY|SKIP_N] [skip]");
+            return;
+        }
+        int fps = args.length > 1 ? Integer.parseInt(args[1]) : 25;
+        long deadline = args.length > 2 ? Long.parseLong(args[2]) : 1000 / fps;
+        DropPolicy policy = args.length > 3 ? DropPolicy.valueOf(args[3]) : DropPolicy.LATEST_ONLY;
+        int skip = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        FrameGeometry geometry = FrameGeometry.DEFAULT;
+        PipedInputStream input = new PipedInputStream(geometry.getFrameSize());
+        PipedOutputStream output = new PipedOutputStream(input);
+        Thread producer = new Thread(() -> produce(args[0], geometry, fps, output), "live-stream-producer");
+        producer.start();
+        LiveStream stream = new LiveStream(geometry, deadline, policy, skip, Main.Channel.RED,
+                Main.DetectionStrategy.DISTRIBUTION);
+        try (RawFrameReader reader = new RawFrameReader(input, geometry)) {
+            stream.run(reader, (frame, rects) -> Main.printRects(frame, rects, geometry));
+        }
+        producer.join();
+        System.out.println("Received " + stream.getReceived() + " processed " + stream.getProcessed()
+                + " dropped " + stream.getDropped() + " late " + stream.getLate());
+    }
+
+    private static void produce(String filename, FrameGeometry geometry, int fps, OutputStream output) {
+        int[] data = new int[geometry.getFrameSize()];
+        byte[] bytes = new byte[data.length];
+        long period = 1_000_000_000L / fps;
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(filename));
+             RecordTokenizer tokenizer = new RecordTokenizer(inputStream);
+             OutputStream out = output) {
+            long next = System.nanoTime();
+            while (tokenizer.nextFrame(data)) {
+                for (int i = 0; i < data.length; ++i) {
+                    bytes[i] = (byte) data[i];
+                }
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                }
+                out.write(bytes);
+                out.flush();
+                next += period;
+            }
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -1,7 +1,10 @@
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Created by nigonzalez on 9/21/15.
@@ -13,11 +16,28 @@ public class Main {
     public static final int MAX_OBJECTS = 5;
     public static final int MIN_HEIGHT = 3;
     public static final int MIN_WIDTH = 3;
+    // camera optics used to turn a rectangle into distance and direction
+    public static final double HORIZONTAL_FOV = 60.0;
+    public static final double DISTANCE_PER_ROW = 12.5;
 
     enum Channel {
-        RED,
-        GREEN,
-        BLUE
+        RED(16),
+        GREEN(8),
+        BLUE(0);
+
+        // bit offset of the channel inside a packed 0xRRGGBB pixel
+        final int shift;
+
+        Channel(int shift) {
+            this.shift = shift;
+        }
+    }
+
+    enum DetectionStrategy {
+        // random sampling and hill climbing over the run distribution, up to MAX_OBJECTS
+        DISTRIBUTION,
+        // deterministic connected component labelling, every blob
+        CONNECTED_COMPONENTS
     }
 
     static class RGB {
@@ -57,41 +77,46 @@ public class Main {
     }
 
     public static void saveImage(RGB[] data, String filename) {
-        BufferedImage bufferedImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
-        for (int i = 0; i < WIDTH; ++i) {
-            for (int j = 0; j < HEIGHT; ++j) {
-                int index = j * WIDTH + i;
-                RGB pixel = data[index];
-                int rgb = (pixel.r << 16) | (pixel.g << 8) | pixel.b;
-                bufferedImage.setRGB(i, j, rgb);
-            }
-        }
-        File imageFile = new File(filename + ".png");
-        try {
-            ImageIO.write(bufferedImage, "png", imageFile);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        saveImage(PackedImage.fromRGB(data, WIDTH, HEIGHT), filename);
+    }
+
+    public static void saveImage(PackedImage image, String filename) {
+        writeImage(toBufferedImage(image, 1), new File(filename + ".png"));
     }
 
     public static void saveImage(RGB[] data, int scale, String filename) {
+        saveImage(PackedImage.fromRGB(data, WIDTH, HEIGHT), scale, filename);
+    }
+
+    public static void saveImage(PackedImage image, int scale, String filename) {
         if (scale < 1) {
             return;
         }
-        BufferedImage bufferedImage = new BufferedImage(scale * WIDTH, scale * HEIGHT, BufferedImage.TYPE_INT_RGB);
-        for (int i = 0; i < scale * WIDTH; i += scale) {
-            for (int j = 0; j < scale * HEIGHT; j += scale) {
-                int index = (j / scale) * WIDTH + (i / scale);
-                RGB pixel = data[index];
-                int rgb = (pixel.r << 16) | (pixel.g << 8) | pixel.b;
-                for (int si = 0; si < scale; ++si) {
-                    for (int sj = 0; sj < scale; sj++) {
-                        bufferedImage.setRGB(i + si, j + sj, rgb);
-                    }
-                }
+        writeImage(toBufferedImage(image, scale), new File(filename + "_" + Integer.toString(scale) + ".png"));
+    }
+
+    // Fills the raster a row at a time, each pixel repeated scale x scale times
+    static BufferedImage toBufferedImage(PackedImage image, int scale) {
+        int width = scale * image.width;
+        BufferedImage bufferedImage = new BufferedImage(width, scale * image.height, BufferedImage.TYPE_INT_RGB);
+        int[] raster = ((DataBufferInt) bufferedImage.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < image.height; ++y) {
+            int row = y * scale * width;
+            if (scale == 1) {
+                System.arraycopy(image.pixels, y * image.width, raster, row, width);
+                continue;
+            }
+            for (int x = 0; x < image.width; ++x) {
+                Arrays.fill(raster, row + x * scale, row + (x + 1) * scale, image.pixels[y * image.width + x]);
+            }
+            for (int sy = 1; sy < scale; ++sy) {
+                System.arraycopy(raster, row, raster, row + sy * width, width);
             }
         }
-        File imageFile = new File(filename + "_" + Integer.toString(scale) + ".png");
+        return bufferedImage;
+    }
+
+    static void writeImage(BufferedImage bufferedImage, File imageFile) {
         try {
             ImageIO.write(bufferedImage, "png", imageFile);
         } catch (IOException e) {
@@ -99,70 +124,142 @@ public class Main {
         }
     }
 
-
     public static void saveHistogram(TreeMap<Integer, Integer> data, String filename) {
-        try {
-            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename + ".csv"), "utf-8"));
-            for (Map.Entry<Integer, Integer> entry : data.entrySet()) {
-                String line = Integer.toString(entry.getKey()) + "," + Integer.toString(entry.getValue()) + "\n";
-                writer.write(line);
-            }
-            writer.close();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(filename + ".csv"), "utf-8")) {
+            writer.write(toCsv(data));
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    static String toCsv(TreeMap<Integer, Integer> data) {
+        StringBuilder builder = new StringBuilder(data.size() * 12);
+        for (Map.Entry<Integer, Integer> entry : data.entrySet()) {
+            builder.append(entry.getKey()).append(',').append(entry.getValue()).append('\n');
+        }
+        return builder.toString();
+    }
+
     public static TreeMap<Integer, Integer> getHistogram(RGB[] data, Channel channel) {
-        TreeMap<Integer, Integer> histogram = new TreeMap<>();
-        for (int i = 0; i < data.length; ++i) {
-            int value;
-            switch (channel) {
-                case RED:
-                    value = data[i].r;
-                    break;
-                case GREEN:
-                    value = data[i].g;
-                    break;
-                case BLUE:
-                    value = data[i].b;
-                    break;
-                default: // should never happen
-                    value = 0;
-                    break;
-            }
-            if (histogram.containsKey(value)) {
-                int count = histogram.get(value);
-                count++;
-                histogram.put(value, count);
-            } else {
-                histogram.put(value, 1);
+        ColorHistogram histogram = new ColorHistogram();
+        histogram.fill(PackedImage.fromRGB(data, data.length, 1));
+        return histogram.toTreeMap(channel);
+    }
+
+    // All three channels in one pass
+    public static void getHistogram(PackedImage image, ColorHistogram histogram) {
+        histogram.fill(image);
+    }
+
+    public static RGB[] getBinaryImage(RGB[] image, Channel channel) {
+        PackedImage binary = new PackedImage(WIDTH, HEIGHT);
+        getBinaryImage(PackedImage.fromRGB(image, WIDTH, HEIGHT), channel, binary);
+        return binary.toRGB();
+    }
+
+    public static void getBinaryImage(PackedImage image, Channel channel, PackedImage binary) {
+        getBinaryImage(image, channel, getThreshold(channel), binary);
+    }
+
+    // With a threshold other than the fixed one, e.g. RunningHistogram.getThreshold
+    public static void getBinaryImage(PackedImage image, Channel channel, int threshold, PackedImage binary) {
+        int[] src = image.pixels;
+        int[] dst = binary.pixels;
+        int on = 0xFF << channel.shift;
+        for (int i = 0; i < src.length; ++i) {
+            dst[i] = isChroma(src[i], channel, threshold) ? on : 0;
+        }
+    }
+
+    static int getThreshold(Channel channel) {
+        return channel == Channel.RED ? 30 : 40;
+    }
+
+    // whether the channel dominates the other two enough to count as that colour
+    static boolean isChroma(int pixel, Channel channel) {
+        return isChroma(pixel, channel, getThreshold(channel));
+    }
+
+    static boolean isChroma(int pixel, Channel channel, int threshold) {
+        int r = PackedImage.red(pixel);
+        int g = PackedImage.green(pixel);
+        int b = PackedImage.blue(pixel);
+        switch (channel) {
+            case RED:
+                return (r - g) + (r - b) > threshold;
+            case GREEN:
+                return (g - r) + (g - b) > threshold;
+            default:
+                return (b - r) + (b - g) > threshold;
+        }
+    }
+
+    public static void getBinaryMask(PackedImage image, Channel channel, BinaryMask mask) {
+        getBinaryMask(image, channel, getThreshold(channel), mask);
+    }
+
+    public static void getBinaryMask(PackedImage image, Channel channel, int threshold, BinaryMask mask) {
+        for (int y = 0; y < image.height; ++y) {
+            getBinaryMaskRow(image.pixels, y * image.width, image.width, channel, threshold, mask.bits, y * mask.words);
+        }
+    }
+
+    // The masks of all three channels in one pass, with the fixed thresholds
+    public static void getBinaryMasks(PackedImage image, BinaryMask red, BinaryMask green, BinaryMask blue) {
+        getBinaryMasks(image, getThreshold(Channel.RED), getThreshold(Channel.GREEN), getThreshold(Channel.BLUE),
+                red, green, blue);
+    }
+
+    public static void getBinaryMasks(PackedImage image, int redThreshold, int greenThreshold, int blueThreshold,
+                                      BinaryMask red, BinaryMask green, BinaryMask blue) {
+        int width = image.width;
+        int[] pixels = image.pixels;
+        for (int y = 0; y < image.height; ++y) {
+            int offset = y * width;
+            int word = y * red.words;
+            long reds = 0;
+            long greens = 0;
+            long blues = 0;
+            for (int x = 0; x < width; ++x) {
+                int pixel = pixels[offset + x];
+                int r = PackedImage.red(pixel);
+                int g = PackedImage.green(pixel);
+                int b = PackedImage.blue(pixel);
+                // (c - x) + (c - y) is 3c - (r + g + b)
+                int sum = r + g + b;
+                if (3 * r - sum > redThreshold) reds |= 1L << x;
+                if (3 * g - sum > greenThreshold) greens |= 1L << x;
+                if (3 * b - sum > blueThreshold) blues |= 1L << x;
+                if ((x & 63) == 63 || x == width - 1) {
+                    red.bits[word] = reds;
+                    green.bits[word] = greens;
+                    blue.bits[word] = blues;
+                    word++;
+                    reds = 0;
+                    greens = 0;
+                    blues = 0;
+                }
             }
         }
-        return histogram;
     }
 
-    public static RGB[] getBinaryImage(RGB[] image, Channel channel) {
-        RGB[] binaryImage = new RGB[image.length];
-        for (int i = 0; i < image.length; ++i) {
-            int binaryRed = 0, binaryGreen = 0, binaryBlue = 0;
-            switch (channel) {
-                case RED:
-                    int r = (image[i].r - image[i].g) + (image[i].r - image[i].b);
-                    binaryRed = (r > 30) ? 255 : 0;
-                    break;
-                case GREEN:
-                    int g = (image[i].g - image[i].r) + (image[i].g - image[i].b);
-                    binaryGreen = (g > 40) ? 255 : 0;
-                    break;
-                case BLUE:
-                    int b = (image[i].b - image[i].r) + (image[i].b - image[i].g);
-                    binaryBlue = (b > 40) ? 255 : 0;
-                    break;
+    static void getBinaryMaskRow(int[] pixels, int offset, int width, Channel channel, long[] bits, int word) {
+        getBinaryMaskRow(pixels, offset, width, channel, getThreshold(channel), bits, word);
+    }
+
+    // Thresholds width pixels starting at offset into mask words starting at word
+    static void getBinaryMaskRow(int[] pixels, int offset, int width, Channel channel, int threshold,
+                                 long[] bits, int word) {
+        long value = 0;
+        for (int x = 0; x < width; ++x) {
+            if (isChroma(pixels[offset + x], channel, threshold)) {
+                value |= 1L << x;
+            }
+            if ((x & 63) == 63 || x == width - 1) {
+                bits[word++] = value;
+                value = 0;
             }
-            binaryImage[i] = new RGB(binaryRed, binaryGreen, binaryBlue);
         }
-        return binaryImage;
     }
 
     public static int getColorForPixel(RGB[] image, int x, int y, Channel channel) {
@@ -178,166 +275,105 @@ public class Main {
         return -1; // should never happen
     }
 
-    public static Rect[] sDistribution = new Rect[WIDTH * HEIGHT];
+    public static int getColorForPixel(PackedImage image, int x, int y, Channel channel) {
+        return (image.pixels[y * image.width + x] >> channel.shift) & 0xFF;
+    }
 
     public static RGB[] getDistributionImage(RGB[] image, Channel channel) {
-        RGB[] distribution = new RGB[image.length];
-        int[] absolutes = new int[image.length];
-        int max = 0;
-        for (int i = 0; i < WIDTH; ++i) {
-            for (int j = 0; j < HEIGHT; ++j) {
-                int index = j * WIDTH + i;
-                int color = getColorForPixel(image, i, j, channel);
-                int t = j, r = i, b = j, l = i;
-                if (color > 0) {
-                    while (getColorForPixel(image, i, t, channel) > 40) {
-                        t--;
-                        if (t > 0) {
-                            if (getColorForPixel(image, i, t, channel) == 0) {
-                                t++;
-                                break;
-                            }
-                        } else {
-                            t++;
-                            break;
-                        }
-                    }
-                    while (getColorForPixel(image, r, j, channel) > 40) {
-                        r++;
-                        if (r < WIDTH - 1) {
-                            if (getColorForPixel(image, r, j, channel) == 0) {
-                                r--;
-                                break;
-                            }
-                        } else {
-                            r--;
-                            break;
-                        }
-                    }
-                    while (getColorForPixel(image, i, b, channel) > 40) {
-                        b++;
-                        if (b < HEIGHT - 1) {
-                            if (getColorForPixel(image, i, b, channel) == 0) {
-                                b--;
-                                break;
-                            }
-                        } else {
-                            b--;
-                            break;
-                        }
-                    }
-                    while (getColorForPixel(image, l, j, channel) > 40) {
-                        l--;
-                        if (l > 0) {
-                            if (getColorForPixel(image, l, j, channel) == 0) {
-                                l++;
-                                break;
-                            }
-                        } else {
-                            l++;
-                            break;
-                        }
-                    }
-                    absolutes[index] = (b - t) * (r - l);
-                    if (absolutes[index] > max) {
-                        max = absolutes[index];
-                    }
-                } else {
-                    absolutes[index] = 0;
-                }
-                Rect rect = new Rect();
-                rect.h = b - t;
-                rect.w = r - l;
-                rect.x = l + rect.w / 2;
-                rect.y = t + rect.h / 2;
-                sDistribution[index] = rect;
-            }
-        }
-        for (int i = 0; i < image.length; ++i) {
-            int color = (int)(255.0 * ((double)absolutes[i] / max));
-            switch (channel) {
-                case RED:
-                    distribution[i] = new RGB(color, 0, 0);
-                    break;
-                case GREEN:
-                    distribution[i] = new RGB(0, color, 0);
-                    break;
-                case BLUE:
-                    distribution[i] = new RGB(0, 0, color);
-                    break;
-            }
-        }
+        PackedImage distribution = new PackedImage(WIDTH, HEIGHT);
+        getDistributionImage(PackedImage.fromRGB(image, WIDTH, HEIGHT), channel, distribution);
+        return distribution.toRGB();
+    }
+
+    public static void getDistributionImage(PackedImage image, Channel channel, PackedImage distribution) {
+        BinaryMask mask = BinaryMask.fromImage(image, channel);
+        getDistribution(mask).toImage(mask, channel, distribution);
+    }
+
+    public static Distribution getDistribution(BinaryMask mask) {
+        Distribution distribution = new Distribution(mask.width, mask.height);
+        distribution.compute(mask);
         return distribution;
     }
 
     public static Rect getRectForImage(RGB[] image, Channel channel) {
+        return getRectForImage(PackedImage.fromRGB(image, WIDTH, HEIGHT), channel);
+    }
+
+    public static Rect getRectForImage(PackedImage image, Channel channel) {
+        BinaryMask mask = BinaryMask.fromImage(image, channel);
+        return getRectForImage(getDistribution(mask), mask);
+    }
+
+    public static Rect getRectForImage(Distribution distribution, BinaryMask mask) {
+        int width = mask.width;
+        int size = width * mask.height;
         int iteration = 0;
-        while (iteration < WIDTH * HEIGHT) {
-            int pixel = (int)Math.floor(Math.random() * WIDTH * HEIGHT);
-            int x = pixel % WIDTH;
-            int y = pixel / WIDTH;
+        while (iteration < size) {
+            int pixel = ThreadLocalRandom.current().nextInt(size);
+            int x = pixel % width;
+            int y = pixel / width;
             int area = 0;
             int newArea = 1;
-            Rect rect = null;
+            int rect = -1;
             while (newArea > area) {
                 area = newArea;
-                if (getColorForPixel(image, x, y, channel) > 0) {
-                    pixel = y * WIDTH + x;
-                    Rect mRect = sDistribution[pixel];
-                    if (mRect.w > MIN_WIDTH && mRect.h > MIN_HEIGHT) {
+                if (mask.get(x, y)) {
+                    pixel = y * width + x;
+                    int mX = distribution.getX(pixel);
+                    int mY = distribution.getY(pixel);
+                    int mW = distribution.getW(pixel);
+                    int mH = distribution.getH(pixel);
+                    if (mW > MIN_WIDTH && mH > MIN_HEIGHT) {
                         int mArea;
                         int maxArea;
                         int maxPixel;
                         // Check points
                         // center
-                        mArea = mRect.w * mRect.h;
+                        mArea = mW * mH;
                         maxArea = mArea;
                         maxPixel = pixel;
-                        rect = mRect;
+                        rect = pixel;
                         // top left
-                        int tlPixel = (mRect.y - mRect.h / 4) * WIDTH + (mRect.x - mRect.w / 4);
-                        Rect tlRect = sDistribution[tlPixel];
-                        mArea = tlRect.w * tlRect.h;
+                        int tlPixel = (mY - mH / 4) * width + (mX - mW / 4);
+                        mArea = distribution.getArea(tlPixel);
                         if (mArea > maxArea) {
                             maxArea = mArea;
                             maxPixel = tlPixel;
-                            rect = tlRect;
+                            rect = tlPixel;
                         }
                         // top right
-                        int trPixel = (mRect.y - mRect.h / 4) * WIDTH + (mRect.x + mRect.w / 4);
-                        Rect trRect = sDistribution[trPixel];
-                        mArea = trRect.w * trRect.h;
+                        int trPixel = (mY - mH / 4) * width + (mX + mW / 4);
+                        mArea = distribution.getArea(trPixel);
                         if (mArea > maxArea) {
                             maxArea = mArea;
                             maxPixel = trPixel;
-                            rect = trRect;
+                            rect = trPixel;
                         }
                         // bottom left
-                        int blPixel = (mRect.y + mRect.h / 4) * WIDTH + (mRect.x - mRect.w / 4);
-                        Rect blRect = sDistribution[blPixel];
-                        mArea = blRect.w * blRect.h;
+                        int blPixel = (mY + mH / 4) * width + (mX - mW / 4);
+                        mArea = distribution.getArea(blPixel);
                         if (mArea > maxArea) {
                             maxArea = mArea;
                             maxPixel = blPixel;
-                            rect = blRect;
+                            rect = blPixel;
                         }
                         // bottom right
-                        int brPixel = (mRect.y + mRect.h / 4) * WIDTH + (mRect.x + mRect.w / 4);
-                        Rect brRect = sDistribution[brPixel];
-                        mArea = brRect.w * brRect.h;
+                        int brPixel = (mY + mH / 4) * width + (mX + mW / 4);
+                        mArea = distribution.getArea(brPixel);
                         if (mArea > maxArea) {
                             maxArea = mArea;
                             maxPixel = brPixel;
-                            rect = brRect;
+                            rect = brPixel;
                         }
                         newArea = maxArea;
-                        x = maxPixel % WIDTH;
-                        y = maxPixel / WIDTH;
+                        x = maxPixel % width;
+                        y = maxPixel / width;
                     }
                 }
             }
-            if (rect != null) {
-                return rect;
+            if (rect >= 0) {
+                return distribution.getRect(rect);
             }
             iteration++;
         }
@@ -345,245 +381,300 @@ public class Main {
     }
 
     public static void deleteRectFromImage(RGB[] image, Rect rect) {
+        PackedImage packed = PackedImage.fromRGB(image, WIDTH, HEIGHT);
+        deleteRectFromImage(packed, rect);
+        packed.copyTo(image);
+    }
+
+    public static void deleteRectFromImage(PackedImage image, Rect rect) {
         int x = rect.x - rect.w / 2;
         int y = rect.y - rect.h / 2;
-        for (int i = 0; i <= rect.w; ++i) {
-            for (int j = 0; j <= rect.h; ++j) {
-                int index = (y + j) * WIDTH + (x + i);
-                image[index] = new RGB();
-            }
+        for (int j = 0; j <= rect.h; ++j) {
+            int index = (y + j) * image.width + x;
+            Arrays.fill(image.pixels, index, index + rect.w + 1, 0);
         }
     }
 
+    public static void deleteRectFromImage(BinaryMask mask, Rect rect) {
+        int x = rect.x - rect.w / 2;
+        int y = rect.y - rect.h / 2;
+        mask.clearRect(x, y, x + rect.w, y + rect.h);
+    }
+
     public static List<Rect> getRectsForImage(RGB[] image, Channel channel) {
+        PackedImage packed = PackedImage.fromRGB(image, WIDTH, HEIGHT);
+        List<Rect> rects = getRectsForImage(packed, channel);
+        packed.copyTo(image);
+        return rects;
+    }
+
+    public static List<Rect> getRectsForImage(PackedImage image, Channel channel) {
+        BinaryMask mask = BinaryMask.fromImage(image, channel);
+        List<Rect> rects = getRectsForImage(getDistribution(mask), mask);
+        for (Rect rect : rects) {
+            deleteRectFromImage(image, rect);
+        }
+        return rects;
+    }
+
+    // Expects the distribution to be computed for the mask, clears the rects found from both
+    public static List<Rect> getRectsForImage(Distribution distribution, BinaryMask mask) {
         List<Rect> rects = new ArrayList<>();
         int iteration = 0;
         while (iteration < MAX_OBJECTS) {
-            Rect rect = getRectForImage(image, channel);
+            Rect rect = getRectForImage(distribution, mask);
             if (rect != null) {
                 rects.add(rect);
-                deleteRectFromImage(image, rect);
-                getDistributionImage(image, channel);
+                deleteRectFromImage(mask, rect);
+                int x = rect.x - rect.w / 2;
+                int y = rect.y - rect.h / 2;
+                distribution.update(mask, x, y, x + rect.w, y + rect.h);
             }
             iteration++;
         }
         return rects;
     }
 
+    // Clears the rects found from the mask when using the distribution search
+    public static List<Rect> getRectsForImage(DetectionContext context, BinaryMask mask, DetectionStrategy strategy) {
+        PipelineMetrics metrics = context.metrics;
+        long time = PipelineMetrics.start(metrics);
+        List<Rect> rects;
+        switch (strategy) {
+            case CONNECTED_COMPONENTS:
+                rects = context.blobs.detectRects(mask);
+                break;
+            default:
+                context.distribution.compute(mask);
+                time = PipelineMetrics.lap(metrics, PipelineMetrics.Stage.DISTRIBUTION, time);
+                rects = getRectsForImage(context.distribution, mask);
+        }
+        PipelineMetrics.lap(metrics, PipelineMetrics.Stage.DETECTION, time);
+        return rects;
+    }
+
     public static RGB[] granularityFilter(RGB[] data, Channel channel) {
-        RGB[] granularity = new RGB[data.length];
-        for (int i = 0; i < WIDTH; ++i) {
-            for (int j = 0; j < HEIGHT; ++j) {
-                int index = j * WIDTH + i;
-                if (i == 0 || i == WIDTH - 1 || j == 0 || j == HEIGHT - 1) {
-                    granularity[index] = new RGB();
+        PackedImage granularity = new PackedImage(WIDTH, HEIGHT);
+        granularityFilter(PackedImage.fromRGB(data, WIDTH, HEIGHT), channel, granularity);
+        return granularity.toRGB();
+    }
+
+    public static void granularityFilter(PackedImage data, Channel channel, PackedImage granularity) {
+        int width = data.width;
+        int height = data.height;
+        int shift = channel.shift;
+        int on = 0xFF << shift;
+        int[] src = data.pixels;
+        int[] dst = granularity.pixels;
+        for (int j = 0; j < height; ++j) {
+            for (int i = 0; i < width; ++i) {
+                int index = j * width + i;
+                if (i == 0 || i == width - 1 || j == 0 || j == height - 1) {
+                    dst[index] = 0;
                     continue;
                 }
-                int[] indexes = new int[8];
-                indexes[0] = (j - 1) * WIDTH + (i - 1);
-                indexes[1] = (j - 1) * WIDTH + i;
-                indexes[2] = (j - 1) * WIDTH + (i + 1);
-                indexes[3] = j * WIDTH + (i - 1);
-                indexes[4] = j * WIDTH + (i + 1);
-                indexes[5] = (j + 1) * WIDTH + (i - 1);
-                indexes[6] = (j + 1) * WIDTH + i;
-                indexes[7] = (j + 1) * WIDTH + (i + 1);
                 int counter = 0;
-                for (int k = 0; k < indexes.length; ++k) {
-                    switch (channel) {
-                        case RED:
-                            if (data[indexes[k]].r > 0) counter++;
-                            break;
-                        case GREEN:
-                            if (data[indexes[k]].g > 0) counter++;
-                            break;
-                        case BLUE:
-                            if (data[indexes[k]].b > 0) counter++;
-                            break;
+                for (int dy = -width; dy <= width; dy += width) {
+                    for (int dx = -1; dx <= 1; ++dx) {
+                        if ((dy != 0 || dx != 0) && ((src[index + dy + dx] >> shift) & 0xFF) > 0) {
+                            counter++;
+                        }
                     }
                 }
-                if (counter > 4) {
-                    RGB pixel = new RGB();
-                    switch (channel) {
-                        case RED:
-                            pixel = new RGB(255, 0, 0);
-                            break;
-                        case GREEN:
-                            pixel = new RGB(0, 255, 0);
-                            break;
-                        case BLUE:
-                            pixel = new RGB(0, 0, 255);
-                            break;
-                    }
-                    granularity[index] = pixel;
+                dst[index] = counter > 4 ? on : 0;
+            }
+        }
+    }
+
+    public static void granularityFilter(BinaryMask mask, BinaryMask granularity) {
+        mask.majority(granularity);
+    }
+
+    // The masks of several channels in one pass, row by row, granularity[i] is the result of masks[i]
+    public static void granularityFilter(BinaryMask[] masks, BinaryMask[] granularity) {
+        long[] counter = new long[4];
+        int height = masks[0].height;
+        int words = masks[0].words;
+        for (int y = 0; y < height; ++y) {
+            int row = y * words;
+            for (int m = 0; m < masks.length; ++m) {
+                if (y == 0 || y == height - 1) {
+                    Arrays.fill(granularity[m].bits, row, row + words, 0L);
                 } else {
-                    granularity[index] = new RGB();
+                    masks[m].majorityRow(masks[m].bits, row - words, row, row + words, granularity[m].bits, row, counter);
                 }
             }
         }
-        return granularity;
     }
 
     public static void drawRectangleInImage(RGB[] image, int x, int y, int w, int h) {
-        int index;
+        PackedImage packed = PackedImage.fromRGB(image, WIDTH, HEIGHT);
+        drawRectangleInImage(packed, x, y, w, h);
+        packed.copyTo(image);
+    }
+
+    public static void drawRectangleInImage(PackedImage image, int x, int y, int w, int h) {
+        int width = image.width;
+        int green = PackedImage.pack(0, 255, 0);
         int x0 = x - w / 2;
         int y0 = y - h / 2;
         for (int i = 0; i <= w; ++i) {
-            index = y0 * WIDTH + (x0 + i);
-            image[index] = new RGB(0, 255, 0);
-            index = (y0 + h) * WIDTH + (x0 + i);
-            image[index] = new RGB(0, 255, 0);
+            image.pixels[y0 * width + (x0 + i)] = green;
+            image.pixels[(y0 + h) * width + (x0 + i)] = green;
         }
         for (int i = 0; i <= h; ++i) {
-            index = (y0 + i) * WIDTH + x0;
-            image[index] = new RGB(0, 255, 0);
-            index = (y0 + i) * WIDTH + (x0 + w);
-            image[index] = new RGB(0, 255, 0);
+            image.pixels[(y0 + i) * width + x0] = green;
+            image.pixels[(y0 + i) * width + (x0 + w)] = green;
         }
     }
 
     public static RGB[] getImage(int[] rawData) {
-        int index;
-        RGB[] image = new RGB[WIDTH * HEIGHT];
-        for (int i = 0; i < WIDTH; ++i) {
-            for (int j = 0; j < HEIGHT; ++j) {
-                index = j * WIDTH + i;
-                int h = rawData[2 * index];
-                int l = rawData[2 * index + 1];
-                int r = h & 0xF8;
-                int g = ((h & 0x07) << 5) | ((l & 0xE0) >> 3);
-                int b = (l & 0x1F) << 3;
-                RGB pixel = new RGB(r, g, b);
-                image[index] = pixel;
-            }
+        PackedImage image = new PackedImage(WIDTH, HEIGHT);
+        getImage(rawData, image);
+        return image.toRGB();
+    }
+
+    public static void getImage(int[] rawData, PackedImage image) {
+        int[] pixels = image.pixels;
+        for (int index = 0; index < pixels.length; ++index) {
+            int h = rawData[2 * index];
+            int l = rawData[2 * index + 1];
+            int r = h & 0xF8;
+            int g = ((h & 0x07) << 5) | ((l & 0xE0) >> 3);
+            int b = (l & 0x1F) << 3;
+            pixels[index] = PackedImage.pack(r, g, b);
         }
-        return image;
     }
 
-    public static RGB[] getAverageImage(RGB[] image) {
-        RGB[] avgImage = new RGB[image.length];
-        for (int i = 0; i < image.length; ++i) {
-            int avgRed = 0, avgGreen = 0, avgBlue = 0;
-            RGB avgPixel;
-            int x = i % WIDTH;
-            int y = i / WIDTH;
-            if (x == 0 || x == WIDTH - 1 || y == 0 || y == HEIGHT - 1) {
-                avgPixel = new RGB(image[i]);
-            } else {
-                int[] indexes = new int[9];
-                indexes[0] = (y - 1) * WIDTH + (x + 1);
-                indexes[1] = (y - 1) * WIDTH + x;
-                indexes[2] = (y - 1) * WIDTH + (x + 1);
-                indexes[3] = y * WIDTH + (x + 1);
-                indexes[4] = y * WIDTH + x;
-                indexes[5] = y * WIDTH + (x + 1);
-                indexes[6] = (y + 1) * WIDTH + (x + 1);
-                indexes[7] = (y + 1) * WIDTH + x;
-                indexes[8] = (y + 1) * WIDTH + (x + 1);
-                for (int k = 0; k < indexes.length; ++k) {
-                    avgRed += image[indexes[k]].r;
-                    avgGreen += image[indexes[k]].g;
-                    avgBlue += image[indexes[k]].b;
-                }
-                avgPixel = new RGB(avgRed / 9, avgGreen / 9, avgBlue / 9);
-            }
-            avgImage[i] = avgPixel;
+    // Decodes the RGB565 bytes of the frame where they are, high byte first
+    public static void getImage(ByteBuffer frame, PackedImage image) {
+        int[] pixels = image.pixels;
+        for (int index = 0; index < pixels.length; ++index) {
+            int pixel = frame.getShort(2 * index);
+            int r = (pixel >> 8) & 0xF8;
+            int g = (pixel >> 3) & 0xFC;
+            int b = (pixel << 3) & 0xF8;
+            pixels[index] = PackedImage.pack(r, g, b);
         }
-        return avgImage;
+    }
+
+    public static RGB[] getAverageImage(RGB[] image) {
+        PackedImage avgImage = new PackedImage(WIDTH, HEIGHT);
+        getAverageImage(PackedImage.fromRGB(image, WIDTH, HEIGHT), avgImage);
+        return avgImage.toRGB();
+    }
+
+    public static void getAverageImage(PackedImage image, PackedImage avgImage) {
+        ChannelKernels.DEFAULT.average3x3(image, avgImage);
+    }
+
+    // Builds the tables for this one image, reuse a BoxFilter for a sequence of frames
+    public static void getAverageImage(PackedImage image, PackedImage avgImage, int radius, BoxFilter.Border border) {
+        getAverageImage(image, avgImage, new BoxFilter(image.width, image.height, radius, border));
+    }
+
+    public static void getAverageImage(PackedImage image, PackedImage avgImage, BoxFilter filter) {
+        filter.apply(image, avgImage);
     }
 
     public static RGB[] getMedianImage(RGB[] image) {
-        RGB[] medianImage = new RGB[image.length];
-        for (int i = 0; i < image.length; ++i) {
-            int medianRed, medianGreen, medianBlue;
-            RGB medianPixel;
-            int x = i % WIDTH;
-            int y = i / WIDTH;
-            if (x == 0 || x == WIDTH - 1 || y == 0 || y == HEIGHT - 1) {
-                medianPixel = new RGB(image[i]);
-            } else {
-                ArrayList<Integer> medianReds = new ArrayList<>();
-                ArrayList<Integer> medianGreens = new ArrayList<>();
-                ArrayList<Integer> medianBlues = new ArrayList<>();
-                int[] indexes = new int[9];
-                indexes[0] = (y - 1) * WIDTH + (x + 1);
-                indexes[1] = (y - 1) * WIDTH + x;
-                indexes[2] = (y - 1) * WIDTH + (x + 1);
-                indexes[3] = y * WIDTH + (x + 1);
-                indexes[4] = y * WIDTH + x;
-                indexes[5] = y * WIDTH + (x + 1);
-                indexes[6] = (y + 1) * WIDTH + (x + 1);
-                indexes[7] = (y + 1) * WIDTH + x;
-                indexes[8] = (y + 1) * WIDTH + (x + 1);
-                for (int k = 0; k < indexes.length; ++k) {
-                    medianReds.add(image[indexes[k]].r);
-                    medianGreens.add(image[indexes[k]].g);
-                    medianBlues.add(image[indexes[k]].b);
-                }
-                Collections.sort(medianReds);
-                Collections.sort(medianGreens);
-                Collections.sort(medianBlues);
-                medianRed = medianReds.get(4);
-                medianGreen = medianGreens.get(4);
-                medianBlue = medianBlues.get(4);
-                medianPixel = new RGB(medianRed, medianGreen, medianBlue);
-            }
-            medianImage[i] = medianPixel;
-        }
-        return medianImage;
+        PackedImage medianImage = new PackedImage(WIDTH, HEIGHT);
+        getMedianImage(PackedImage.fromRGB(image, WIDTH, HEIGHT), medianImage);
+        return medianImage.toRGB();
+    }
+
+    public static void getMedianImage(PackedImage image, PackedImage medianImage) {
+        MedianFilter.median3x3(image, medianImage);
+    }
+
+    public static void getMedianImage(PackedImage image, PackedImage medianImage, int radius) {
+        MedianFilter.median(image, medianImage, radius);
     }
 
     public static void generateFramesFromFile(String filename) {
-        InputStream inputStream = Main.class.getResourceAsStream(filename);
-        Scanner scanner = new Scanner(inputStream);
-        int index = 0;
+        generateFramesFromFile(filename, FrameGeometry.DEFAULT);
+    }
+
+    public static void generateFramesFromFile(String filename, FrameGeometry geometry) {
         int frame = 0;
-        int[] data = new int[2 * WIDTH * HEIGHT];
-        while (scanner.hasNextInt()) {
-            data[index++] = scanner.nextInt();
-            if (index == data.length) {
-                index = 0;
+        int[] data = new int[geometry.getFrameSize()];
+        PackedImage image = new PackedImage(geometry.width, geometry.height);
+        try (RecordTokenizer tokenizer = new RecordTokenizer(Main.class.getResourceAsStream(filename));
+             AsyncImageWriter writer = new AsyncImageWriter()) {
+            while (tokenizer.nextFrame(data)) {
                 String file = String.format("frame2_%d", frame++);
-                saveImage(getImage(data), file);
+                getImage(data, image);
+                writer.saveImage(image, file);
             }
-        }
-        try {
-            inputStream.close();
-        } catch (Exception e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     public static void checkFrame(String filename, int frameToLook) {
-        InputStream inputStream = Main.class.getResourceAsStream(filename);
-        Scanner scanner = new Scanner(inputStream);
-        int index = 0;
+        checkFrame(filename, frameToLook, FrameGeometry.DEFAULT);
+    }
+
+    // A compressed record on disk is read from its index, anything else as a text resource
+    public static void checkFrame(String filename, int frameToLook, FrameGeometry geometry) {
+        File file = new File(filename);
+        if (CompressedRecord.isCompressedRecord(file)) {
+            try (CompressedRecord record = new CompressedRecord(file)) {
+                checkFrame(record, frameToLook);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
         int frame = 0;
-        int[] data = new int[2 * WIDTH * HEIGHT];
-        while (scanner.hasNextInt()) {
-            data[index++] = scanner.nextInt();
-            if (index == data.length) {
-                index = 0;
+        DetectionContext context = new DetectionContext(geometry);
+        try (RecordTokenizer tokenizer = new RecordTokenizer(Main.class.getResourceAsStream(filename))) {
+            while (tokenizer.nextFrame(context.data)) {
                 if (frame == frameToLook) {
                     break;
                 } else {
                     frame++;
                 }
             }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        RGB[] image = getImage(data);
-        RGB[] median = getMedianImage(image);
-        RGB[] binary = getBinaryImage(median, Channel.RED);
+        checkFrame(context);
+    }
+
+    public static void checkFrame(FrameSource source, int frameToLook) {
+        DetectionContext context = new DetectionContext(source.getGeometry());
+        source.readFrame(frameToLook, context.data);
+        checkFrame(context);
+    }
+
+    // Inflates only the chunk holding the frame
+    public static void checkFrame(CompressedRecord record, int frameToLook) throws IOException {
+        DetectionContext context = new DetectionContext(record.getGeometry());
+        record.readFrame(frameToLook, context.data);
+        checkFrame(context);
+    }
+
+    private static void checkFrame(DetectionContext context) {
+        PackedImage image = context.image;
+        PackedImage median = context.median;
+        PackedImage binary = context.binary;
+        PackedImage granularity = context.granularity;
+        getImage(context.data, image);
+        getMedianImage(image, median);
+        getBinaryMask(median, Channel.RED, context.mask);
+        context.mask.toImage(Channel.RED, binary);
         saveImage(binary, 3, "binary");
-        RGB[] granularity = granularityFilter(binary, Channel.RED);
+        granularityFilter(context.mask, context.filtered);
+        context.filtered.toImage(Channel.RED, granularity);
         saveImage(granularity, 3, "granularity");
         int objects = 1;
         int iterations = 1;
         int sum = 0;
         for (int i = 0; i < iterations; i++) {
-            RGB[] copy = Arrays.copyOf(granularity, granularity.length);
-            getDistributionImage(copy, Channel.RED);
-            List<Rect> rects = getRectsForImage(copy, Channel.RED);
+            BinaryMask copy = new BinaryMask(context.filtered);
+            context.distribution.compute(copy);
+            List<Rect> rects = getRectsForImage(context.distribution, copy);
             System.out.println("Detected " + rects.size());
             for (Rect rect : rects) {
                 System.out.println("w = " + rect.w + " h = " + rect.h);
@@ -602,51 +693,408 @@ public class Main {
     }
 
     public static void checkRecord(String filename) {
-        InputStream inputStream = Main.class.getResourceAsStream(filename);
-        Scanner scanner = new Scanner(inputStream);
-        int index = 0;
+        checkRecord(filename, FrameGeometry.DEFAULT);
+    }
+
+    public static void checkRecord(String filename, FrameGeometry geometry) {
+        checkRecord(filename, geometry, DetectionStrategy.DISTRIBUTION);
+    }
+
+    public static void checkRecord(String filename, FrameGeometry geometry, DetectionStrategy strategy) {
+        File file = new File(filename);
+        if (CompressedRecord.isCompressedRecord(file)) {
+            try (CompressedRecord record = new CompressedRecord(file)) {
+                checkRecord(record, strategy);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
         int frame = 0;
-        int[] data = new int[2 * WIDTH * HEIGHT];
+        DetectionContext context = new DetectionContext(geometry);
+        try (RecordTokenizer tokenizer = new RecordTokenizer(Main.class.getResourceAsStream(filename))) {
+            while (tokenizer.nextFrame(context.data)) {
+                checkRecordFrame(frame, context, strategy);
+                frame++;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void checkRecord(String filename, FrameGeometry geometry, DetectionStrategy strategy,
+                                   int parallelism) {
+        FrameEngine engine = new FrameEngine(geometry, parallelism, 2 * parallelism, Channel.RED, strategy);
+        try (RecordTokenizer tokenizer = new RecordTokenizer(Main.class.getResourceAsStream(filename))) {
+            engine.run(tokenizer, (frame, rects) -> printRects(frame, rects, geometry));
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void checkRecord(FrameSource source, DetectionStrategy strategy, int parallelism) {
+        checkRecord(source, new FrameEngine(source.getGeometry(), parallelism, 2 * parallelism, Channel.RED, strategy));
+    }
+
+    // With the options set on the engine, e.g. engine.tiles to split every frame into bands or
+    // engine.pyramidLevels for the coarse to fine search
+    public static void checkRecord(FrameSource source, FrameEngine engine) {
+        FrameGeometry geometry = source.getGeometry();
+        try {
+            engine.run(source.reader(), (frame, rects) -> printRects(frame, rects, geometry));
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void checkRecord(FrameSource source) {
+        checkRecord(source, DetectionStrategy.DISTRIBUTION);
+    }
+
+    public static void checkRecord(FrameSource source, DetectionStrategy strategy) {
+        DetectionContext context = new DetectionContext(source.getGeometry());
+        for (int frame = 0; frame < source.getFrameCount(); ++frame) {
+            source.readFrame(frame, context.data);
+            checkRecordFrame(frame, context, strategy);
+        }
+    }
+
+    // The chunks are inflated on a reader thread while the frames before them are detected
+    public static void checkRecord(CompressedRecord record, DetectionStrategy strategy) {
+        DetectionContext context = new DetectionContext(record.getGeometry());
+        try (StreamingFrameReader reader = new StreamingFrameReader(record.reader(), record.getGeometry())) {
+            int frame = 0;
+            while (reader.nextFrame(context.data)) {
+                checkRecordFrame(frame, context, strategy);
+                frame++;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void checkRecordAllChannels(FrameSource source, DetectionStrategy strategy) {
+        DetectionContext context = new DetectionContext(source.getGeometry());
+        for (int frame = 0; frame < source.getFrameCount(); ++frame) {
+            source.readFrame(frame, context.data);
+            for (Map.Entry<Channel, List<Rect>> entry : detectAll(context, context.data, strategy).entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    System.out.println(entry.getKey());
+                    printRects(frame, entry.getValue(), context.geometry);
+                }
+            }
+        }
+    }
+
+    // Reports the stage latencies and counters every periodMillis while the record runs
+    public static void checkRecord(FrameSource source, DetectionStrategy strategy, PipelineMetrics metrics,
+                                   PrintStream report, MetricsReporter.Format format, long periodMillis) {
+        DetectionContext context = new DetectionContext(source.getGeometry());
+        context.metrics = metrics;
+        MetricsReporter reporter = new MetricsReporter(metrics, report, format, periodMillis);
+        try {
+            for (int frame = 0; frame < source.getFrameCount(); ++frame) {
+                source.readFrame(frame, context.data);
+                checkRecordFrame(frame, context, strategy);
+            }
+        } finally {
+            reporter.close();
+        }
+    }
+
+    // Adds every frame to the recording histogram, adaptiveThreshold thresholds with its running cast
+    public static void checkRecord(FrameSource source, DetectionStrategy strategy, RunningHistogram recording,
+                                   boolean adaptiveThreshold) {
+        DetectionContext context = new DetectionContext(source.getGeometry());
+        context.recording = recording;
+        context.adaptiveThreshold = adaptiveThreshold;
+        for (int frame = 0; frame < source.getFrameCount(); ++frame) {
+            source.readFrame(frame, context.data);
+            checkRecordFrame(frame, context, strategy);
+        }
+        System.out.println("Thresholds red " + recording.getThreshold(Channel.RED) + " green "
+                + recording.getThreshold(Channel.GREEN) + " blue " + recording.getThreshold(Channel.BLUE));
+    }
+
+    // The distribution search coarse to fine, see PyramidDetector
+    public static void checkRecord(FrameSource source, DetectionStrategy strategy, PyramidDetector pyramid) {
+        DetectionContext context = new DetectionContext(source.getGeometry());
+        context.pyramid = pyramid;
+        for (int frame = 0; frame < source.getFrameCount(); ++frame) {
+            source.readFrame(frame, context.data);
+            checkRecordFrame(frame, context, strategy);
+        }
+        System.out.println("Region searches " + pyramid.getRegionSearches() + " full searches "
+                + pyramid.getFullSearches());
+    }
+
+    // Full detection only every few frames or when an object is lost, see ObjectTracker
+    public static void checkRecord(FrameSource source, DetectionStrategy strategy, ObjectTracker tracker) {
+        DetectionContext context = new DetectionContext(source.getGeometry());
+        for (int frame = 0; frame < source.getFrameCount(); ++frame) {
+            source.readFrame(frame, context.data);
+            printRects(frame, tracker.track(context, context.data, Channel.RED, strategy), context.geometry);
+        }
+        System.out.println("Full detections " + tracker.getFullDetections() + " tracked frames "
+                + tracker.getTrackedFrames());
+    }
+
+    // Unchanged frames reuse the last detections, see ChangeDetector
+    public static void checkRecord(FrameSource source, DetectionStrategy strategy, ChangeDetector changes) {
+        DetectionContext context = new DetectionContext(source.getGeometry());
+        for (int frame = 0; frame < source.getFrameCount(); ++frame) {
+            source.readFrame(frame, context.data);
+            printRects(frame, changes.detect(context, context.data, Channel.RED, strategy), context.geometry);
+        }
+        System.out.println("Detected " + changes.getDetected() + " frames, skipped " + changes.getSkipped());
+    }
+
+    // Live text records, e.g. from a pipe or socket, see LiveStream for the drop policies
+    public static void checkStream(InputStream inputStream, FrameGeometry geometry, long deadlineMillis,
+                                   LiveStream.DropPolicy policy) {
+        checkStream(new RecordTokenizer(inputStream), geometry, deadlineMillis, policy);
+    }
+
+    public static void checkStream(FrameReader reader, FrameGeometry geometry, long deadlineMillis,
+                                   LiveStream.DropPolicy policy) {
+        LiveStream stream = new LiveStream(geometry, deadlineMillis, policy);
+        try {
+            stream.run(reader, (frame, rects) -> printRects(frame, rects, geometry));
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+        System.out.println("Received " + stream.getReceived() + " processed " + stream.getProcessed()
+                + " dropped " + stream.getDropped() + " late " + stream.getLate());
+    }
+
+    // Consumes frames from a ring a producer process fills, decoding each one straight from its slot
+    public static void checkRing(File ringFile, DetectionStrategy strategy) {
+        checkRing(ringFile, strategy, null);
+    }
+
+    // Same adding every frame that was not overwritten while it was read to the recording histogram
+    public static void checkRing(File ringFile, DetectionStrategy strategy, RunningHistogram recording) {
+        try (FrameRing ring = FrameRing.open(ringFile)) {
+            FrameGeometry geometry = ring.getGeometry();
+            DetectionContext context = new DetectionContext(geometry);
+            context.recording = recording;
+            long sequence;
+            while ((sequence = ring.next()) >= 0) {
+                ByteBuffer frame = ring.frame(sequence);
+                if (frame == null) {
+                    continue;
+                }
+                if (recording != null) {
+                    context.histogram.fillRaw(frame);
+                }
+                filter(context, frame, Channel.RED);
+                // the slot is not read after the filters
+                if (!ring.isValid(sequence)) {
+                    continue;
+                }
+                if (recording != null) {
+                    recording.add(context.histogram);
+                }
+                printRects(sequence, search(context, strategy), geometry);
+            }
+            System.out.println("Dropped " + ring.getDropped() + " of " + ring.getCursor() + " frames");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void checkRecordFrame(int frame, DetectionContext context, DetectionStrategy strategy) {
+        List<Rect> rects = detect(context, context.data, Channel.RED, strategy);
+        long time = PipelineMetrics.start(context.metrics);
+        printRects(frame, rects, context.geometry);
+        PipelineMetrics.lap(context.metrics, PipelineMetrics.Stage.LOCALIZATION, time);
+    }
+
+    // Runs the detection chain on a raw frame using the context's buffers
+    public static List<Rect> detect(DetectionContext context, int[] data, Channel channel, DetectionStrategy strategy) {
+        record(context, data);
+        filter(context, data, channel);
+        return search(context, strategy);
+    }
+
+    public static List<Rect> detect(DetectionContext context, ByteBuffer frame, Channel channel,
+                                    DetectionStrategy strategy) {
+        record(context, frame);
+        filter(context, frame, channel);
+        return search(context, strategy);
+    }
+
+    // Adds the frame's histogram to context.recording, if any, before it is filtered
+    static void record(DetectionContext context, int[] data) {
+        if (context.recording != null) {
+            context.histogram.fillRaw(data);
+            context.recording.add(context.histogram);
+        }
+    }
+
+    static void record(DetectionContext context, ByteBuffer frame) {
+        if (context.recording != null) {
+            context.histogram.fillRaw(frame);
+            context.recording.add(context.histogram);
+        }
+    }
+
+    // The rect search on context.filtered, the last step of detect
+    static List<Rect> search(DetectionContext context, DetectionStrategy strategy) {
+        List<Rect> rects = search(context, context.filtered, strategy);
+        if (context.metrics != null) {
+            context.metrics.frame(rects.size());
+        }
+        return rects;
+    }
+
+    // Same on another filtered mask, through the pyramid when the context has one. Clears the mask
+    static List<Rect> search(DetectionContext context, BinaryMask filtered, DetectionStrategy strategy) {
+        if (context.pyramid != null && strategy == DetectionStrategy.DISTRIBUTION) {
+            return context.pyramid.detectRects(context, filtered, strategy);
+        }
+        return getRectsForImage(context, filtered, strategy);
+    }
+
+    // The detection chain up to the filtered mask, left in context.filtered. The recording is
+    // left to record, so a crop of the frame can be filtered with the frame's thresholds
+    static void filter(DetectionContext context, int[] data, Channel channel) {
+        PipelineMetrics metrics = context.metrics;
+        long time = PipelineMetrics.start(metrics);
+        if (!context.medianFilter) {
+            ChromaTable.decodeThreshold(ChromaTable.table(context), data, channel, context.mask);
+            time = PipelineMetrics.lap(metrics, PipelineMetrics.Stage.BINARY, time);
+            if (context.tiles != null) {
+                context.tiles.granularity(context.mask, context.filtered);
+            } else {
+                granularityFilter(context.mask, context.filtered);
+            }
+            PipelineMetrics.lap(metrics, PipelineMetrics.Stage.GRANULARITY, time);
+            return;
+        }
+        context.kernels.decode(data, context.image);
+        time = PipelineMetrics.lap(metrics, PipelineMetrics.Stage.DECODE, time);
+        filterImage(context, channel, time);
+    }
+
+    // Same as above reading the frame bytes in place, e.g. from FrameRing.frame or FrameSource.getFrame
+    static void filter(DetectionContext context, ByteBuffer frame, Channel channel) {
+        PipelineMetrics metrics = context.metrics;
+        long time = PipelineMetrics.start(metrics);
+        if (!context.medianFilter) {
+            ChromaTable.decodeThreshold(ChromaTable.table(context), frame, channel, context.mask);
+            time = PipelineMetrics.lap(metrics, PipelineMetrics.Stage.BINARY, time);
+            if (context.tiles != null) {
+                context.tiles.granularity(context.mask, context.filtered);
+            } else {
+                granularityFilter(context.mask, context.filtered);
+            }
+            PipelineMetrics.lap(metrics, PipelineMetrics.Stage.GRANULARITY, time);
+            return;
+        }
+        getImage(frame, context.image);
+        time = PipelineMetrics.lap(metrics, PipelineMetrics.Stage.DECODE, time);
+        filterImage(context, channel, time);
+    }
+
+    // The chain from the decoded context.image to context.filtered
+    private static void filterImage(DetectionContext context, Channel channel, long time) {
+        PipelineMetrics metrics = context.metrics;
+        boolean adaptive = context.adaptiveThreshold && context.recording != null;
+        if (context.tiles != null) {
+            int threshold = adaptive ? context.recording.getThreshold(channel) : getThreshold(channel);
+            context.tiles.fused(context.image, channel, threshold, context.filtered);
+        } else {
+            getMedianImage(context.image, context.median);
+            time = PipelineMetrics.lap(metrics, PipelineMetrics.Stage.MEDIAN, time);
+            if (adaptive) {
+                getBinaryMask(context.median, channel, context.recording.getThreshold(channel), context.mask);
+            } else {
+                context.kernels.binaryMask(context.median, channel, context.mask);
+            }
+            time = PipelineMetrics.lap(metrics, PipelineMetrics.Stage.BINARY, time);
+            granularityFilter(context.mask, context.filtered);
+        }
+        PipelineMetrics.lap(metrics, PipelineMetrics.Stage.GRANULARITY, time);
+    }
+
+    // Rects of every channel, the frame is decoded, filtered, thresholded and granularity filtered once
+    // for all three. Each channel is searched like detect does, through the context's pyramid if any
+    public static EnumMap<Channel, List<Rect>> detectAll(DetectionContext context, int[] data,
+                                                         DetectionStrategy strategy) {
+        PipelineMetrics metrics = context.metrics;
+        record(context, data);
+        long time = PipelineMetrics.start(metrics);
+        BinaryMask[] masks = context.channelMasks;
+        if (!context.medianFilter) {
+            ChromaTable.decodeThreshold(ChromaTable.table(context), data, masks[0], masks[1], masks[2]);
+        } else {
+            context.kernels.decode(data, context.image);
+            time = PipelineMetrics.lap(metrics, PipelineMetrics.Stage.DECODE, time);
+            if (context.tiles != null) {
+                context.tiles.median(context.image, context.median);
+            } else {
+                getMedianImage(context.image, context.median);
+            }
+            time = PipelineMetrics.lap(metrics, PipelineMetrics.Stage.MEDIAN, time);
+            if (context.adaptiveThreshold && context.recording != null) {
+                RunningHistogram recording = context.recording;
+                getBinaryMasks(context.median, recording.getThreshold(Channel.RED),
+                        recording.getThreshold(Channel.GREEN), recording.getThreshold(Channel.BLUE),
+                        masks[0], masks[1], masks[2]);
+            } else {
+                getBinaryMasks(context.median, masks[0], masks[1], masks[2]);
+            }
+        }
+        time = PipelineMetrics.lap(metrics, PipelineMetrics.Stage.BINARY, time);
+        if (context.tiles != null) {
+            context.tiles.granularity(masks, context.channelFiltered);
+        } else {
+            granularityFilter(masks, context.channelFiltered);
+        }
+        PipelineMetrics.lap(metrics, PipelineMetrics.Stage.GRANULARITY, time);
+        EnumMap<Channel, List<Rect>> rects = new EnumMap<>(Channel.class);
+        int found = 0;
+        for (Channel channel : Channel.values()) {
+            List<Rect> channelRects = search(context, context.channelFiltered[channel.ordinal()], strategy);
+            rects.put(channel, channelRects);
+            found += channelRects.size();
+        }
+        if (metrics != null) {
+            metrics.frame(found);
+        }
+        return rects;
+    }
+
+    static void printRects(long frame, List<Rect> rects, FrameGeometry geometry) {
         double x0 = 22.0;
         double y0 = 0.0;
-        while (scanner.hasNextInt()) {
-            data[index++] = scanner.nextInt();
-            if (index == data.length) {
-                RGB[] image = getImage(data);
-                RGB[] median = getMedianImage(image);
-                RGB[] binary = getBinaryImage(median, Channel.RED);
-                RGB[] granularity = granularityFilter(binary, Channel.RED);
-                getDistributionImage(granularity, Channel.RED);
-                List<Rect> rects = getRectsForImage(granularity, Channel.RED);
-                if (rects.size() > 0) {
-                    System.out.println("Frame " + frame + " detected " + rects.size());
-                    for (Rect rect : rects) {
-                        System.out.println("w = " + rect.w + " h = " + rect.h);
-                        double ratio = (double)rect.w / rect.h;
-                        if (ratio < 1.1) {
-                            int w = rect.w;
-                            rect.w = (int)(1.33 * rect.h);
-                            if (rect.x > 20) {
-                                rect.x += (rect.w - w) / 2;
-                            } else {
-                                rect.x -= (rect.w - w) / 2;
-                            }
-                        }
-                        System.out.println("Ratio w / h " + ratio);
-                        double distance = 500.0 / rect.h;
-                        double direction = 1.5 * (rect.x - 20);
-                        double x = x0 + distance * Math.tan(Math.toRadians(direction));
-                        double y = distance;
-                        x /= 10.0;
-                        y /= 10.0;
-                        //String coord = String.format("\\draw [fill] (%.2f, %.2f) circle [radius=0.1];", x, y);
-                        //System.out.println(coord);
-                        System.out.println("Distance " + distance + " direction " + direction);
-                        System.out.println("");
+        int center = geometry.width / 2;
+        if (rects.size() > 0) {
+            System.out.println("Frame " + frame + " detected " + rects.size());
+            for (Rect rect : rects) {
+                System.out.println("w = " + rect.w + " h = " + rect.h);
+                double ratio = (double)rect.w / rect.h;
+                if (ratio < 1.1) {
+                    int w = rect.w;
+                    rect.w = (int)(1.33 * rect.h);
+                    if (rect.x > center) {
+                        rect.x += (rect.w - w) / 2;
+                    } else {
+                        rect.x -= (rect.w - w) / 2;
                     }
                 }
-                index = 0;
-                frame++;
+                System.out.println("Ratio w / h " + ratio);
+                double distance = DISTANCE_PER_ROW * geometry.height / rect.h;
+                double direction = HORIZONTAL_FOV / geometry.width * (rect.x - center);
+                double x = x0 + distance * Math.tan(Math.toRadians(direction));
+                double y = distance;
+                x /= 10.0;
+                y /= 10.0;
+                //String coord = String.format("\\draw [fill] (%.2f, %.2f) circle [radius=0.1];", x, y);
+                //System.out.println(coord);
+                System.out.println("Distance " + distance + " direction " + direction);
+                System.out.println("");
             }
         }
     }
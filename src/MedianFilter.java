@@ -0,0 +1,180 @@
+import java.util.Arrays;
+
+/**
+ * Median filters over packed images, each channel is filtered on its own.
+ *
+ * The 3x3 case uses a 19 comparison sorting network. Larger windows use Huang's running
+ * histogram: the window slides along a row removing one column and adding another, and the
+ * median is moved from its previous value, so no sorting is done at all. Pixels closer than
+ * the radius to the border are copied unchanged.
+ */
+public class MedianFilter {
+
+    public static void median3x3(PackedImage image, PackedImage medianImage) {
+        for (int y = 0; y < image.height; ++y) {
+            median3x3Row(image, y, medianImage.pixels, y * image.width);
+        }
+    }
+
+    // Filters row y of the image into dst starting at offset, rows can be done in any order
+    public static void median3x3Row(PackedImage image, int y, int[] dst, int offset) {
+        int width = image.width;
+        int[] src = image.pixels;
+        int row = y * width;
+        if (y == 0 || y == image.height - 1 || width < 3) {
+            System.arraycopy(src, row, dst, offset, width);
+            return;
+        }
+        dst[offset] = src[row];
+        dst[offset + width - 1] = src[row + width - 1];
+        for (int x = 1; x < width - 1; ++x) {
+            int i = row + x;
+            int p0 = src[i - width - 1], p1 = src[i - width], p2 = src[i - width + 1];
+            int p3 = src[i - 1], p4 = src[i], p5 = src[i + 1];
+            int p6 = src[i + width - 1], p7 = src[i + width], p8 = src[i + width + 1];
+            int r = median9(p0 >> 16 & 0xFF, p1 >> 16 & 0xFF, p2 >> 16 & 0xFF,
+                    p3 >> 16 & 0xFF, p4 >> 16 & 0xFF, p5 >> 16 & 0xFF,
+                    p6 >> 16 & 0xFF, p7 >> 16 & 0xFF, p8 >> 16 & 0xFF);
+            int g = median9(p0 >> 8 & 0xFF, p1 >> 8 & 0xFF, p2 >> 8 & 0xFF,
+                    p3 >> 8 & 0xFF, p4 >> 8 & 0xFF, p5 >> 8 & 0xFF,
+                    p6 >> 8 & 0xFF, p7 >> 8 & 0xFF, p8 >> 8 & 0xFF);
+            int b = median9(p0 & 0xFF, p1 & 0xFF, p2 & 0xFF,
+                    p3 & 0xFF, p4 & 0xFF, p5 & 0xFF,
+                    p6 & 0xFF, p7 & 0xFF, p8 & 0xFF);
+            dst[offset + x] = PackedImage.pack(r, g, b);
+        }
+    }
+
+    // Paeth's network, leaves the median in p4
+    static int median9(int p0, int p1, int p2, int p3, int p4, int p5, int p6, int p7, int p8) {
+        int t;
+        t = Math.min(p1, p2); p2 = Math.max(p1, p2); p1 = t;
+        t = Math.min(p4, p5); p5 = Math.max(p4, p5); p4 = t;
+        t = Math.min(p7, p8); p8 = Math.max(p7, p8); p7 = t;
+        t = Math.min(p0, p1); p1 = Math.max(p0, p1); p0 = t;
+        t = Math.min(p3, p4); p4 = Math.max(p3, p4); p3 = t;
+        t = Math.min(p6, p7); p7 = Math.max(p6, p7); p6 = t;
+        t = Math.min(p1, p2); p2 = Math.max(p1, p2); p1 = t;
+        t = Math.min(p4, p5); p5 = Math.max(p4, p5); p4 = t;
+        t = Math.min(p7, p8); p8 = Math.max(p7, p8); p7 = t;
+        p3 = Math.max(p0, p3);
+        p5 = Math.min(p5, p8);
+        t = Math.min(p4, p7); p7 = Math.max(p4, p7); p4 = t;
+        p6 = Math.max(p3, p6);
+        p4 = Math.max(p1, p4);
+        p2 = Math.min(p2, p5);
+        p4 = Math.min(p4, p7);
+        t = Math.min(p4, p2); p2 = Math.max(p4, p2); p4 = t;
+        p4 = Math.max(p6, p4);
+        return Math.min(p4, p2);
+    }
+
+    public static void median(PackedImage image, PackedImage medianImage, int radius) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Radius must be positive, got " + radius);
+        }
+        if (radius == 1) {
+            median3x3(image, medianImage);
+            return;
+        }
+        int width = image.width;
+        int height = image.height;
+        int[] src = image.pixels;
+        int[] dst = medianImage.pixels;
+        copyBorder(src, dst, width, height, radius);
+        if (width <= 2 * radius || height <= 2 * radius) {
+            return;
+        }
+        int[] reds = new int[256];
+        int[] greens = new int[256];
+        int[] blues = new int[256];
+        int half = (2 * radius + 1) * (2 * radius + 1) / 2;
+        for (int y = radius; y < height - radius; ++y) {
+            Arrays.fill(reds, 0);
+            Arrays.fill(greens, 0);
+            Arrays.fill(blues, 0);
+            for (int wy = y - radius; wy <= y + radius; ++wy) {
+                for (int wx = 0; wx <= 2 * radius; ++wx) {
+                    int pixel = src[wy * width + wx];
+                    reds[pixel >> 16 & 0xFF]++;
+                    greens[pixel >> 8 & 0xFF]++;
+                    blues[pixel & 0xFF]++;
+                }
+            }
+            // median and number of window values below it, per channel
+            int medianRed = 0, medianGreen = 0, medianBlue = 0;
+            int belowRed = 0, belowGreen = 0, belowBlue = 0;
+            while (belowRed + reds[medianRed] <= half) {
+                belowRed += reds[medianRed++];
+            }
+            while (belowGreen + greens[medianGreen] <= half) {
+                belowGreen += greens[medianGreen++];
+            }
+            while (belowBlue + blues[medianBlue] <= half) {
+                belowBlue += blues[medianBlue++];
+            }
+            dst[y * width + radius] = PackedImage.pack(medianRed, medianGreen, medianBlue);
+            for (int x = radius + 1; x < width - radius; ++x) {
+                int out = x - radius - 1;
+                int in = x + radius;
+                for (int wy = y - radius; wy <= y + radius; ++wy) {
+                    int row = wy * width;
+                    int removed = src[row + out];
+                    int added = src[row + in];
+                    int v;
+                    v = removed >> 16 & 0xFF;
+                    reds[v]--;
+                    if (v < medianRed) belowRed--;
+                    v = removed >> 8 & 0xFF;
+                    greens[v]--;
+                    if (v < medianGreen) belowGreen--;
+                    v = removed & 0xFF;
+                    blues[v]--;
+                    if (v < medianBlue) belowBlue--;
+                    v = added >> 16 & 0xFF;
+                    reds[v]++;
+                    if (v < medianRed) belowRed++;
+                    v = added >> 8 & 0xFF;
+                    greens[v]++;
+                    if (v < medianGreen) belowGreen++;
+                    v = added & 0xFF;
+                    blues[v]++;
+                    if (v < medianBlue) belowBlue++;
+                }
+                while (belowRed > half) {
+                    belowRed -= reds[--medianRed];
+                }
+                while (belowRed + reds[medianRed] <= half) {
+                    belowRed += reds[medianRed++];
+                }
+                while (belowGreen > half) {
+                    belowGreen -= greens[--medianGreen];
+                }
+                while (belowGreen + greens[medianGreen] <= half) {
+                    belowGreen += greens[medianGreen++];
+                }
+                while (belowBlue > half) {
+                    belowBlue -= blues[--medianBlue];
+                }
+                while (belowBlue + blues[medianBlue] <= half) {
+                    belowBlue += blues[medianBlue++];
+                }
+                dst[y * width + x] = PackedImage.pack(medianRed, medianGreen, medianBlue);
+            }
+        }
+    }
+
+    private static void copyBorder(int[] src, int[] dst, int width, int height, int radius) {
+        for (int y = 0; y < height; ++y) {
+            int row = y * width;
+            if (y < radius || y >= height - radius) {
+                System.arraycopy(src, row, dst, row, width);
+            } else {
+                int edge = Math.min(radius, width);
+                System.arraycopy(src, row, dst, row, edge);
+                System.arraycopy(src, row + width - edge, dst, row + width - edge, edge);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a snapshot of the metrics every period, as CSV lines under one header or one JSON
+ * object per line. Closing writes a last snapshot.
+ */
+public class MetricsReporter implements Closeable {
+
+    enum Format {
+        CSV,
+        JSON
+    }
+
+    final PipelineMetrics metrics;
+    final PrintStream out;
+    final Format format;
+    private final ScheduledExecutorService executor;
+
+    public MetricsReporter(PipelineMetrics metrics, PrintStream out, Format format, long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Report period must be positive, got " + periodMillis + " ms");
+        }
+        this.metrics = metrics;
+        this.out = out;
+        this.format = format;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (format == Format.CSV) {
+            out.println(PipelineMetrics.Snapshot.csvHeader());
+        }
+        executor.scheduleAtFixedRate(this::report, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void report() {
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        out.println(format == Format.CSV ? snapshot.toCsv() : snapshot.toJson());
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report();
+    }
+
+}
@@ -0,0 +1,233 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Carries detected objects from frame to frame so most frames only search a small window.
+ *
+ * Each track predicts its next box with a constant velocity. On a tracked frame the filters and
+ * the rect search only run on a region of interest around each prediction, cut from the raw
+ * frame with a halo of two pixels so the median and granularity filters see the same
+ * neighbours as on the full frame. The whole frame is searched again every redetectInterval
+ * frames, when there is nothing to track, or when a track is lost: nothing found in its region,
+ * or the object reaches the edge of the region.
+ */
+public class ObjectTracker {
+
+    public static final int DEFAULT_REDETECT_INTERVAL = 10;
+    public static final int DEFAULT_MARGIN = 4;
+    // pixels around the region the median and granularity filters read
+    private static final int HALO = 2;
+    private static final int CROP_ALIGNMENT = 8;
+    private static final int MAX_CACHED_CONTEXTS = 16;
+
+    static class Track {
+
+        final Main.Rect rect = new Main.Rect();
+        double vx;
+        double vy;
+        int age;
+
+    }
+
+    final int redetectInterval;
+    final int margin;
+    private final List<Track> tracks = new ArrayList<>();
+    // contexts for the regions of interest by size, regions of a stable object keep their size
+    private final Map<FrameGeometry, DetectionContext> regions = new HashMap<>();
+    private int sinceFullDetection;
+    private int fullDetections;
+    private int trackedFrames;
+
+    public ObjectTracker(int redetectInterval, int margin) {
+        if (redetectInterval < 1 || margin < 0) {
+            throw new IllegalArgumentException("Interval must be positive and margin not negative");
+        }
+        this.redetectInterval = redetectInterval;
+        this.margin = margin;
+    }
+
+    public ObjectTracker() {
+        this(DEFAULT_REDETECT_INTERVAL, DEFAULT_MARGIN);
+    }
+
+    // Rects of the objects in the frame, copies the caller may change
+    public List<Main.Rect> track(DetectionContext context, int[] data, Main.Channel channel,
+                                 Main.DetectionStrategy strategy) {
+        // the whole frame goes into the recording, tracked or not
+        Main.record(context, data);
+        if (tracks.isEmpty() || sinceFullDetection + 1 >= redetectInterval
+                || !trackRegions(context, data, channel, strategy)) {
+            Main.filter(context, data, channel);
+            List<Main.Rect> rects = Main.search(context, strategy);
+            associate(rects);
+            sinceFullDetection = 0;
+            fullDetections++;
+        } else {
+            sinceFullDetection++;
+            trackedFrames++;
+        }
+        List<Main.Rect> rects = new ArrayList<>();
+        for (Track track : tracks) {
+            rects.add(copy(track.rect));
+        }
+        return rects;
+    }
+
+    public void reset() {
+        tracks.clear();
+        sinceFullDetection = 0;
+    }
+
+    public List<Track> getTracks() {
+        return tracks;
+    }
+
+    public int getFullDetections() {
+        return fullDetections;
+    }
+
+    public int getTrackedFrames() {
+        return trackedFrames;
+    }
+
+    // Searches each track's region, false if any track was lost
+    private boolean trackRegions(DetectionContext context, int[] data, Main.Channel channel,
+                                 Main.DetectionStrategy strategy) {
+        int width = context.geometry.width;
+        int height = context.geometry.height;
+        Main.Rect[] found = new Main.Rect[tracks.size()];
+        for (int t = 0; t < tracks.size(); ++t) {
+            Track track = tracks.get(t);
+            int px = (int) Math.round(track.rect.x + track.vx);
+            int py = (int) Math.round(track.rect.y + track.vy);
+            int mx = margin + (int) Math.ceil(Math.abs(track.vx));
+            int my = margin + (int) Math.ceil(Math.abs(track.vy));
+            int rx0 = Math.max(px - track.rect.w / 2 - mx, 0);
+            int ry0 = Math.max(py - track.rect.h / 2 - my, 0);
+            int rx1 = Math.min(px - track.rect.w / 2 + track.rect.w + mx, width - 1);
+            int ry1 = Math.min(py - track.rect.h / 2 + track.rect.h + my, height - 1);
+            // crop sizes are rounded up so a growing object keeps reusing the same contexts
+            int cw = Math.min(roundUp(rx1 - rx0 + 1 + 2 * HALO), width);
+            int ch = Math.min(roundUp(ry1 - ry0 + 1 + 2 * HALO), height);
+            int cx0 = Math.min(Math.max(rx0 - HALO, 0), width - cw);
+            int cy0 = Math.min(Math.max(ry0 - HALO, 0), height - ch);
+            int cx1 = cx0 + cw - 1;
+            int cy1 = cy0 + ch - 1;
+            DetectionContext region = region(context, cw, ch);
+            int rowSize = 2 * region.geometry.width;
+            for (int y = cy0; y <= cy1; ++y) {
+                System.arraycopy(data, 2 * (y * width + cx0), region.data, (y - cy0) * rowSize, rowSize);
+            }
+            Main.filter(region, region.data, channel);
+            // only the region itself is filtered as on the full frame, the halo is not
+            BinaryMask mask = region.filtered;
+            mask.clearRect(0, 0, rx0 - cx0 - 1, mask.height - 1);
+            mask.clearRect(rx1 - cx0 + 1, 0, mask.width - 1, mask.height - 1);
+            mask.clearRect(0, 0, mask.width - 1, ry0 - cy0 - 1);
+            mask.clearRect(0, ry1 - cy0 + 1, mask.width - 1, mask.height - 1);
+            Main.Rect best = null;
+            long bestDistance = Long.MAX_VALUE;
+            for (Main.Rect rect : Main.getRectsForImage(region, mask, strategy)) {
+                rect.x += cx0;
+                rect.y += cy0;
+                long dx = rect.x - px;
+                long dy = rect.y - py;
+                if (dx * dx + dy * dy < bestDistance) {
+                    bestDistance = dx * dx + dy * dy;
+                    best = rect;
+                }
+            }
+            if (best == null || touches(best, rx0, ry0, rx1, ry1, width, height)) {
+                return false;
+            }
+            found[t] = best;
+        }
+        for (int t = 0; t < tracks.size(); ++t) {
+            update(tracks.get(t), found[t]);
+        }
+        return true;
+    }
+
+    private DetectionContext region(DetectionContext context, int width, int height) {
+        FrameGeometry geometry = new FrameGeometry(width, height);
+        DetectionContext region = regions.get(geometry);
+        if (region == null) {
+            if (regions.size() >= MAX_CACHED_CONTEXTS) {
+                regions.clear();
+            }
+            region = new DetectionContext(geometry);
+            regions.put(geometry, region);
+        }
+        region.medianFilter = context.medianFilter;
+        region.kernels = context.kernels;
+        // the regions threshold like the full frame, filter never adds their histograms
+        region.recording = context.recording;
+        region.adaptiveThreshold = context.adaptiveThreshold;
+        return region;
+    }
+
+    private static int roundUp(int size) {
+        return (size + CROP_ALIGNMENT - 1) / CROP_ALIGNMENT * CROP_ALIGNMENT;
+    }
+
+    // Whether the rect reaches an edge of the region that is not an edge of the frame
+    private static boolean touches(Main.Rect rect, int rx0, int ry0, int rx1, int ry1, int width, int height) {
+        int x0 = rect.x - rect.w / 2;
+        int y0 = rect.y - rect.h / 2;
+        int x1 = x0 + rect.w;
+        int y1 = y0 + rect.h;
+        return (x0 <= rx0 && rx0 > 0) || (y0 <= ry0 && ry0 > 0)
+                || (x1 >= rx1 && rx1 < width - 1) || (y1 >= ry1 && ry1 < height - 1);
+    }
+
+    // Matches the rects of a full detection to the tracks by nearest center, the rest start new tracks
+    private void associate(List<Main.Rect> rects) {
+        List<Track> previous = new ArrayList<>(tracks);
+        tracks.clear();
+        for (Main.Rect rect : rects) {
+            Track nearest = null;
+            long nearestDistance = Long.MAX_VALUE;
+            for (Track track : previous) {
+                long dx = rect.x - track.rect.x;
+                long dy = rect.y - track.rect.y;
+                long limit = Math.max(track.rect.w, track.rect.h);
+                if (dx * dx + dy * dy <= limit * limit && dx * dx + dy * dy < nearestDistance) {
+                    nearestDistance = dx * dx + dy * dy;
+                    nearest = track;
+                }
+            }
+            if (nearest != null) {
+                previous.remove(nearest);
+                update(nearest, rect);
+            } else {
+                nearest = new Track();
+                set(nearest.rect, rect);
+            }
+            tracks.add(nearest);
+        }
+    }
+
+    private static void update(Track track, Main.Rect rect) {
+        // smoothed so one noisy box does not throw the prediction off
+        track.vx = 0.5 * track.vx + 0.5 * (rect.x - track.rect.x);
+        track.vy = 0.5 * track.vy + 0.5 * (rect.y - track.rect.y);
+        track.age++;
+        set(track.rect, rect);
+    }
+
+    private static void set(Main.Rect target, Main.Rect rect) {
+        target.x = rect.x;
+        target.y = rect.y;
+        target.w = rect.w;
+        target.h = rect.h;
+    }
+
+    private static Main.Rect copy(Main.Rect rect) {
+        Main.Rect copy = new Main.Rect();
+        set(copy, rect);
+        return copy;
+    }
+
+}
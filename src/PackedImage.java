@@ -0,0 +1,78 @@
+/**
+ * Image stored as one int per pixel packed as 0xRRGGBB, row major.
+ *
+ * Stages write into a caller supplied PackedImage so buffers can be reused between frames,
+ * RGB[] is only converted to and from at the edges for the old API.
+ */
+public class PackedImage {
+
+    final int width;
+    final int height;
+    final int[] pixels;
+
+    public PackedImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+    }
+
+    public PackedImage(PackedImage image) {
+        this.width = image.width;
+        this.height = image.height;
+        this.pixels = image.pixels.clone();
+    }
+
+    public void copyFrom(PackedImage image) {
+        System.arraycopy(image.pixels, 0, pixels, 0, pixels.length);
+    }
+
+    public static int pack(int r, int g, int b) {
+        return (r << 16) | (g << 8) | b;
+    }
+
+    public static int red(int pixel) {
+        return (pixel >> 16) & 0xFF;
+    }
+
+    public static int green(int pixel) {
+        return (pixel >> 8) & 0xFF;
+    }
+
+    public static int blue(int pixel) {
+        return pixel & 0xFF;
+    }
+
+    public static int channel(int pixel, Main.Channel channel) {
+        return (pixel >> channel.shift) & 0xFF;
+    }
+
+    public static PackedImage fromRGB(Main.RGB[] data, int width, int height) {
+        PackedImage image = new PackedImage(width, height);
+        for (int i = 0; i < image.pixels.length; ++i) {
+            Main.RGB pixel = data[i];
+            image.pixels[i] = pack(pixel.r, pixel.g, pixel.b);
+        }
+        return image;
+    }
+
+    public Main.RGB[] toRGB() {
+        Main.RGB[] data = new Main.RGB[pixels.length];
+        for (int i = 0; i < pixels.length; ++i) {
+            int pixel = pixels[i];
+            data[i] = new Main.RGB(red(pixel), green(pixel), blue(pixel));
+        }
+        return data;
+    }
+
+    // Replaces the entries of data that differ from this image, entries may be shared between arrays
+    public void copyTo(Main.RGB[] data) {
+        for (int i = 0; i < pixels.length; ++i) {
+            int pixel = pixels[i];
+            Main.RGB old = data[i];
+            if (old == null || pack(old.r, old.g, old.b) != pixel) {
+                data[i] = new Main.RGB(red(pixel), green(pixel), blue(pixel));
+            }
+        }
+    }
+
+}
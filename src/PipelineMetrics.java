@@ -0,0 +1,157 @@
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms per pipeline stage and counters for frames, detections and dropped frames.
+ *
+ * Metrics are switched on by giving a DetectionContext (or a FrameEngine or LiveStream) an
+ * instance, with none the hot path only checks for null. One instance can be shared by all
+ * the threads of a pipeline. Passes that fuse several stages are recorded under the last stage
+ * they cover, e.g. the tiled median, threshold and granularity pass under GRANULARITY.
+ */
+public class PipelineMetrics {
+
+    enum Stage {
+        DECODE,
+        MEDIAN,
+        BINARY,
+        GRANULARITY,
+        DISTRIBUTION,
+        DETECTION,
+        LOCALIZATION;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    static class Snapshot {
+
+        final long time;
+        final long frames;
+        final long detections;
+        final long drops;
+        final Map<Stage, LatencyHistogram.Snapshot> stages = new EnumMap<>(Stage.class);
+
+        Snapshot(long time, long frames, long detections, long drops) {
+            this.time = time;
+            this.frames = frames;
+            this.detections = detections;
+            this.drops = drops;
+        }
+
+        public static String csvHeader() {
+            StringBuilder builder = new StringBuilder("time,frames,detections,drops");
+            for (Stage stage : Stage.values()) {
+                for (String column : new String[] {"count", "mean", "p50", "p90", "p99", "max"}) {
+                    builder.append(',').append(stage.label).append('_').append(column);
+                }
+            }
+            return builder.toString();
+        }
+
+        // One line matching csvHeader, latencies in nanoseconds
+        public String toCsv() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(time).append(',').append(frames).append(',').append(detections).append(',').append(drops);
+            for (LatencyHistogram.Snapshot histogram : stages.values()) {
+                builder.append(',').append(histogram.count)
+                        .append(',').append(Math.round(histogram.mean))
+                        .append(',').append(histogram.getValueAtPercentile(50))
+                        .append(',').append(histogram.getValueAtPercentile(90))
+                        .append(',').append(histogram.getValueAtPercentile(99))
+                        .append(',').append(histogram.max);
+            }
+            return builder.toString();
+        }
+
+        public String toJson() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("{\"time\":").append(time)
+                    .append(",\"frames\":").append(frames)
+                    .append(",\"detections\":").append(detections)
+                    .append(",\"drops\":").append(drops)
+                    .append(",\"stages\":{");
+            boolean first = true;
+            for (Map.Entry<Stage, LatencyHistogram.Snapshot> entry : stages.entrySet()) {
+                LatencyHistogram.Snapshot histogram = entry.getValue();
+                if (!first) {
+                    builder.append(',');
+                }
+                first = false;
+                builder.append('"').append(entry.getKey().label).append("\":{")
+                        .append("\"count\":").append(histogram.count)
+                        .append(",\"min\":").append(histogram.min)
+                        .append(",\"mean\":").append(Math.round(histogram.mean))
+                        .append(",\"p50\":").append(histogram.getValueAtPercentile(50))
+                        .append(",\"p90\":").append(histogram.getValueAtPercentile(90))
+                        .append(",\"p99\":").append(histogram.getValueAtPercentile(99))
+                        .append(",\"p999\":").append(histogram.getValueAtPercentile(99.9))
+                        .append(",\"max\":").append(histogram.max)
+                        .append('}');
+            }
+            return builder.append("}}").toString();
+        }
+
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder detections = new LongAdder();
+    private final LongAdder drops = new LongAdder();
+
+    public PipelineMetrics() {
+        for (int i = 0; i < histograms.length; ++i) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    // Records the time since start under the stage and returns the current time, for timing stages in turn
+    public static long lap(PipelineMetrics metrics, Stage stage, long start) {
+        if (metrics == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        metrics.record(stage, now - start);
+        return now;
+    }
+
+    public static long start(PipelineMetrics metrics) {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    public void frame(int rects) {
+        frames.increment();
+        detections.add(rects);
+    }
+
+    public void drop() {
+        drops.increment();
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot(System.currentTimeMillis(), frames.sum(), detections.sum(), drops.sum());
+        for (Stage stage : Stage.values()) {
+            snapshot.stages.put(stage, histograms[stage.ordinal()].snapshot());
+        }
+        return snapshot;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        frames.reset();
+        detections.reset();
+        drops.reset();
+    }
+
+}
@@ -0,0 +1,205 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coarse to fine rect search for large frames.
+ *
+ * The filtered mask is halved levels times, a pixel of each level being on if any pixel of its
+ * 2x2 block below is, so every object of the frame is still one connected blob on the coarsest
+ * level. The blobs of the coarsest mask are scaled back to the frame, padded and cut from the
+ * full resolution mask, and the rect search only runs on those regions. Blobs too small to grow
+ * into an object of MIN_WIDTH x MIN_HEIGHT are skipped. Connected components find exactly the
+ * rects of a full frame search, the distribution search is run once per region, up to
+ * MAX_OBJECTS in total. When the regions cover more than half the frame the frame is searched
+ * as a whole.
+ */
+public class PyramidDetector {
+
+    public static final int DEFAULT_LEVELS = 2;
+    // pixels around each region so the runs of the distribution search end inside it
+    private static final int PADDING = 2;
+    private static final int CROP_ALIGNMENT = 8;
+    private static final int MAX_CACHED_CONTEXTS = 32;
+
+    final FrameGeometry geometry;
+    final int levels;
+    // masks[0] is half the frame, masks[levels - 1] the coarsest
+    private final BinaryMask[] masks;
+    private final BlobDetector blobs;
+    // contexts for the regions by size
+    private final Map<FrameGeometry, DetectionContext> regions = new HashMap<>();
+    private int fullSearches;
+    private int regionSearches;
+
+    public PyramidDetector(FrameGeometry geometry, int levels) {
+        if (levels < 1) {
+            throw new IllegalArgumentException("Need at least one level, got " + levels);
+        }
+        this.geometry = geometry;
+        this.levels = levels;
+        this.masks = new BinaryMask[levels];
+        int width = geometry.width;
+        int height = geometry.height;
+        for (int level = 0; level < levels; ++level) {
+            width = (width + 1) / 2;
+            height = (height + 1) / 2;
+            masks[level] = new BinaryMask(width, height);
+        }
+        this.blobs = new BlobDetector(width, height);
+    }
+
+    public PyramidDetector(FrameGeometry geometry) {
+        this(geometry, DEFAULT_LEVELS);
+    }
+
+    // Rects of the objects in the mask, in frame coordinates. Clears them from the mask only on a full
+    // search, which records its own stages, a region search is recorded under DETECTION
+    public List<Main.Rect> detectRects(DetectionContext context, BinaryMask mask, Main.DetectionStrategy strategy) {
+        int width = geometry.width;
+        int height = geometry.height;
+        long time = PipelineMetrics.start(context.metrics);
+        mask.downsample(masks[0]);
+        for (int level = 1; level < levels; ++level) {
+            masks[level - 1].downsample(masks[level]);
+        }
+        int scale = 1 << levels;
+        List<int[]> boxes = new ArrayList<>();
+        for (BlobDetector.Blob blob : blobs.detect(masks[levels - 1])) {
+            Main.Rect rect = blob.rect;
+            // an object spans more than MIN_WIDTH + 1 pixels, at most scale per coarse pixel
+            if ((rect.w + 1) * scale < Main.MIN_WIDTH + 2 || (rect.h + 1) * scale < Main.MIN_HEIGHT + 2) {
+                continue;
+            }
+            int x0 = rect.x - rect.w / 2;
+            int y0 = rect.y - rect.h / 2;
+            boxes.add(new int[] {
+                    Math.max(x0 * scale - PADDING, 0),
+                    Math.max(y0 * scale - PADDING, 0),
+                    Math.min((x0 + rect.w + 1) * scale - 1 + PADDING, width - 1),
+                    Math.min((y0 + rect.h + 1) * scale - 1 + PADDING, height - 1)});
+        }
+        merge(boxes);
+        long area = 0;
+        for (int[] box : boxes) {
+            area += (long) (box[2] - box[0] + 1) * (box[3] - box[1] + 1);
+        }
+        if (2 * area > geometry.getPixelCount()) {
+            fullSearches++;
+            return Main.getRectsForImage(context, mask, strategy);
+        }
+        regionSearches++;
+        List<Main.Rect> rects = new ArrayList<>();
+        for (int[] box : boxes) {
+            DetectionContext region = region(Math.min(roundUp(box[2] - box[0] + 1), width),
+                    Math.min(roundUp(box[3] - box[1] + 1), height));
+            int cw = region.geometry.width;
+            int ch = region.geometry.height;
+            int cx0 = Math.min(box[0], width - cw);
+            int cy0 = Math.min(box[1], height - ch);
+            region.filtered.copyRegion(mask, cx0, cy0);
+            for (Main.Rect rect : Main.getRectsForImage(region, region.filtered, strategy)) {
+                if (touches(rect, cx0, cy0, cw, ch)) {
+                    continue;
+                }
+                rect.x += cx0;
+                rect.y += cy0;
+                if (!contains(rects, rect)) {
+                    rects.add(rect);
+                }
+            }
+        }
+        if (strategy == Main.DetectionStrategy.DISTRIBUTION && rects.size() > Main.MAX_OBJECTS) {
+            rects = new ArrayList<>(rects.subList(0, Main.MAX_OBJECTS));
+        }
+        PipelineMetrics.lap(context.metrics, PipelineMetrics.Stage.DETECTION, time);
+        return rects;
+    }
+
+    public BinaryMask getMask(int level) {
+        return masks[level];
+    }
+
+    // Frames searched as a whole because the regions were too large
+    public int getFullSearches() {
+        return fullSearches;
+    }
+
+    public int getRegionSearches() {
+        return regionSearches;
+    }
+
+    // Joins overlapping boxes until none overlap
+    private static void merge(List<int[]> boxes) {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < boxes.size() && !merged; ++i) {
+                for (int j = i + 1; j < boxes.size(); ++j) {
+                    int[] a = boxes.get(i);
+                    int[] b = boxes.get(j);
+                    if (a[0] <= b[2] && b[0] <= a[2] && a[1] <= b[3] && b[1] <= a[3]) {
+                        a[0] = Math.min(a[0], b[0]);
+                        a[1] = Math.min(a[1], b[1]);
+                        a[2] = Math.max(a[2], b[2]);
+                        a[3] = Math.max(a[3], b[3]);
+                        boxes.remove(j);
+                        merged = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    // A cached context at least width x height and at most twice that area, else a new one
+    private DetectionContext region(int width, int height) {
+        DetectionContext region = null;
+        long area = 2L * width * height;
+        for (DetectionContext cached : regions.values()) {
+            FrameGeometry cachedGeometry = cached.geometry;
+            if (cachedGeometry.width >= width && cachedGeometry.height >= height
+                    && cachedGeometry.getPixelCount() <= area) {
+                region = cached;
+                area = cachedGeometry.getPixelCount();
+            }
+        }
+        if (region == null) {
+            FrameGeometry regionGeometry = new FrameGeometry(width, height);
+            if (regions.size() >= MAX_CACHED_CONTEXTS) {
+                regions.clear();
+            }
+            region = new DetectionContext(regionGeometry);
+            regions.put(regionGeometry, region);
+        }
+        return region;
+    }
+
+    // Four sizes per doubling, so the regions of a frame only ever need a few contexts
+    private static int roundUp(int size) {
+        int alignment = Math.max(CROP_ALIGNMENT, Integer.highestOneBit(size) / 4);
+        return (size + alignment - 1) / alignment * alignment;
+    }
+
+    // Whether the rect reaches an edge of the crop that is not an edge of the frame, part of an object cut
+    // off. The runs of the distribution search stop one pixel short of the edges, so that pixel counts too
+    private boolean touches(Main.Rect rect, int cx0, int cy0, int cw, int ch) {
+        int x0 = rect.x - rect.w / 2;
+        int y0 = rect.y - rect.h / 2;
+        int x1 = x0 + rect.w;
+        int y1 = y0 + rect.h;
+        return (x0 <= 1 && cx0 > 0) || (y0 <= 1 && cy0 > 0)
+                || (x1 >= cw - 2 && cx0 + cw < geometry.width) || (y1 >= ch - 2 && cy0 + ch < geometry.height);
+    }
+
+    private static boolean contains(List<Main.Rect> rects, Main.Rect rect) {
+        for (Main.Rect other : rects) {
+            if (other.x == rect.x && other.y == rect.y && other.w == rect.w && other.h == rect.h) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,51 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads frames of raw RGB565 bytes, high byte first, the frame layout of FrameSource without the
+ * header. Each call blocks until a whole frame has arrived, so it works on pipes and sockets.
+ */
+public class RawFrameReader implements FrameReader, Closeable {
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    public RawFrameReader(ReadableByteChannel channel, FrameGeometry geometry) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(geometry.getFrameSize());
+    }
+
+    public RawFrameReader(InputStream inputStream, FrameGeometry geometry) {
+        this(Channels.newChannel(inputStream), geometry);
+    }
+
+    @Override
+    public boolean nextFrame(int[] data) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("Stream ended inside a frame, " + buffer.position() + " of "
+                        + buffer.capacity() + " bytes read");
+            }
+        }
+        buffer.flip();
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = buffer.get(i) & 0xFF;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,109 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streaming parser for the space separated decimal records, a replacement for Scanner.nextInt().
+ *
+ * The input is read in large direct chunks and decoded digit by digit straight into the
+ * caller's frame buffer, so no objects are created per token or per frame. Values are bytes,
+ * anything above 255 is rejected as malformed.
+ */
+public class RecordTokenizer implements FrameReader, Closeable {
+
+    public static final int BUFFER_SIZE = 1 << 20;
+    private static final long POLL_NANOS = 1_000_000;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private boolean eof = false;
+    // token state survives across chunk boundaries
+    private int value = 0;
+    private boolean inToken = false;
+
+    public RecordTokenizer(ReadableByteChannel channel) {
+        this(channel, BUFFER_SIZE);
+    }
+
+    public RecordTokenizer(ReadableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.buffer.flip();
+    }
+
+    public RecordTokenizer(InputStream inputStream) {
+        this(Channels.newChannel(inputStream));
+    }
+
+    @Override
+    public boolean nextFrame(int[] data) throws IOException {
+        int index = 0;
+        int length = data.length;
+        while (index < length) {
+            if (!buffer.hasRemaining() && !fill()) {
+                if (inToken) {
+                    inToken = false;
+                    data[index++] = value;
+                    return index == length;
+                }
+                return false;
+            }
+            int limit = buffer.limit();
+            int position = buffer.position();
+            while (position < limit && index < length) {
+                int c = buffer.get(position++);
+                int digit = c - '0';
+                if (digit >= 0 && digit <= 9) {
+                    value = inToken ? value * 10 + digit : digit;
+                    inToken = true;
+                    // checked per digit, so long tokens cannot overflow either
+                    if (value > 255) {
+                        throw new IOException("Value out of the byte range in record, " + value + "...");
+                    }
+                } else if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                    if (inToken) {
+                        inToken = false;
+                        data[index++] = value;
+                    }
+                } else {
+                    throw new IOException("Unexpected character '" + (char) c + "' in record");
+                }
+            }
+            buffer.position(position);
+        }
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        buffer.clear();
+        int read = channel.read(buffer);
+        // only a non-blocking channel returns nothing, wait for data instead of spinning on it
+        while (read == 0) {
+            LockSupport.parkNanos(POLL_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Interrupted while waiting for record data");
+            }
+            read = channel.read(buffer);
+        }
+        buffer.flip();
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
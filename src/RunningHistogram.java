@@ -0,0 +1,89 @@
+import java.util.Arrays;
+
+/**
+ * Channel histogram of a whole recording, updated with the histogram of each frame as it is
+ * detected, so statistics of everything seen so far never need a rescan.
+ *
+ * The workers of a FrameEngine can share one, each frame's histogram is merged under a lock.
+ * getThreshold adapts the chroma thresholds of Main.getBinaryImage to a colour cast of the
+ * recording: when the mean pixel already leans towards a channel, the threshold of that channel
+ * rises by the same amount, so a tinted scene does not light up the whole mask. The thresholds
+ * are recomputed as each frame is added, reading them takes no lock.
+ */
+public class RunningHistogram {
+
+    private final long[][] counts = new long[3][256];
+    private long pixels;
+    private int frames;
+    private volatile int[] thresholds = computeThresholds();
+
+    public synchronized void add(ColorHistogram histogram) {
+        for (int c = 0; c < 3; ++c) {
+            long[] total = counts[c];
+            int[] frame = histogram.counts[c];
+            for (int value = 0; value < 256; ++value) {
+                total[value] += frame[value];
+            }
+        }
+        pixels += histogram.getPixelCount();
+        frames++;
+        thresholds = computeThresholds();
+    }
+
+    public synchronized long get(Main.Channel channel, int value) {
+        return counts[channel.ordinal()][value];
+    }
+
+    public synchronized long getPixelCount() {
+        return pixels;
+    }
+
+    public synchronized int getFrameCount() {
+        return frames;
+    }
+
+    public synchronized double getMean(Main.Channel channel) {
+        if (pixels == 0) {
+            return 0;
+        }
+        long[] values = counts[channel.ordinal()];
+        long sum = 0;
+        for (int value = 0; value < 256; ++value) {
+            sum += value * values[value];
+        }
+        return (double) sum / pixels;
+    }
+
+    // Mean chroma score of the recording for the channel, (c - x) + (c - y) over the mean pixel
+    public synchronized double getCast(Main.Channel channel) {
+        double cast = 0;
+        for (Main.Channel other : Main.Channel.values()) {
+            cast += other == channel ? 2 * getMean(other) : -getMean(other);
+        }
+        return cast;
+    }
+
+    // The fixed threshold of the channel, raised by the recording's cast towards it
+    public int getThreshold(Main.Channel channel) {
+        return thresholds[channel.ordinal()];
+    }
+
+    public synchronized void reset() {
+        for (long[] channel : counts) {
+            Arrays.fill(channel, 0);
+        }
+        pixels = 0;
+        frames = 0;
+        thresholds = computeThresholds();
+    }
+
+    private synchronized int[] computeThresholds() {
+        int[] channelThresholds = new int[3];
+        for (Main.Channel channel : Main.Channel.values()) {
+            channelThresholds[channel.ordinal()] = Main.getThreshold(channel)
+                    + (int) Math.max(0, Math.round(getCast(channel)));
+        }
+        return channelThresholds;
+    }
+
+}
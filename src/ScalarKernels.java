@@ -0,0 +1,39 @@
+/**
+ * The channel kernels as plain loops, the reference for the other implementations.
+ */
+public class ScalarKernels implements ChannelKernels {
+
+    // the summed-area tables of the last frame size, kept per thread as the kernels are shared
+    private final ThreadLocal<BoxFilter> averages = new ThreadLocal<>();
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void decode(int[] rawData, PackedImage image) {
+        Main.getImage(rawData, image);
+    }
+
+    @Override
+    public void binaryImage(PackedImage image, Main.Channel channel, PackedImage binary) {
+        Main.getBinaryImage(image, channel, binary);
+    }
+
+    @Override
+    public void binaryMask(PackedImage image, Main.Channel channel, BinaryMask mask) {
+        Main.getBinaryMask(image, channel, mask);
+    }
+
+    @Override
+    public void average3x3(PackedImage image, PackedImage avgImage) {
+        BoxFilter filter = averages.get();
+        if (filter == null || filter.width != image.width || filter.height != image.height) {
+            filter = new BoxFilter(image.width, image.height, 1, BoxFilter.Border.CLAMP);
+            averages.set(filter);
+        }
+        Main.getAverageImage(image, avgImage, filter);
+    }
+
+}
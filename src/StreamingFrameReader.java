@@ -0,0 +1,102 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads ahead of the caller on a thread of its own, so parsing or inflating frames overlaps with
+ * detection instead of running on the processing thread.
+ *
+ * The frames are read into a fixed pool of capacity buffers, the reading thread blocks when all
+ * of them wait for the caller. nextFrame copies the oldest one out and hands the buffer back.
+ * An error of the source is thrown from the nextFrame call that reaches it. close() does not
+ * interrupt the reading thread, which would close an interruptible channel the source reads from,
+ * it wakes the thread and any waiting caller with END_OF_FRAMES instead.
+ */
+public class StreamingFrameReader implements FrameReader, Closeable {
+
+    public static final int DEFAULT_CAPACITY = 4;
+
+    private static final int[] END_OF_FRAMES = new int[0];
+
+    private final BlockingQueue<int[]> free;
+    private final BlockingQueue<int[]> filled;
+    private final Thread thread;
+    private volatile IOException error;
+    private volatile boolean closed;
+    private boolean finished;
+
+    public StreamingFrameReader(FrameReader source, FrameGeometry geometry, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.free = new ArrayBlockingQueue<>(capacity);
+        this.filled = new ArrayBlockingQueue<>(capacity + 1);
+        for (int i = 0; i < capacity; ++i) {
+            free.add(new int[geometry.getFrameSize()]);
+        }
+        this.thread = new Thread(() -> read(source), "frame-reader");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public StreamingFrameReader(FrameReader source, FrameGeometry geometry) {
+        this(source, geometry, DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public boolean nextFrame(int[] data) throws IOException {
+        if (finished || closed) {
+            return false;
+        }
+        int[] frame;
+        try {
+            frame = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a frame", e);
+        }
+        if (frame == END_OF_FRAMES || closed) {
+            finished = true;
+            if (error != null && !closed) {
+                throw error;
+            }
+            return false;
+        }
+        System.arraycopy(frame, 0, data, 0, data.length);
+        free.add(frame);
+        return true;
+    }
+
+    // Stops reading ahead, the source itself is left to the caller to close. The thread stops once a
+    // nextFrame of the source in progress returns
+    @Override
+    public void close() {
+        closed = true;
+        // a reader waiting for a buffer takes the pill, free only has no room once the reader stopped
+        free.offer(END_OF_FRAMES);
+        filled.clear();
+        filled.offer(END_OF_FRAMES);
+    }
+
+    private void read(FrameReader source) {
+        try {
+            while (true) {
+                int[] frame = free.take();
+                if (frame == END_OF_FRAMES || closed || !source.nextFrame(frame)) {
+                    break;
+                }
+                filled.put(frame);
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new IOException("Reading a frame failed", e);
+        } catch (InterruptedException e) {
+            return;
+        }
+        // after close the queue may already hold the pill
+        filled.offer(END_OF_FRAMES);
+    }
+
+}
@@ -0,0 +1,148 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the per-frame filters on bands of rows in parallel, for frames large enough that a single
+ * frame is the latency floor.
+ *
+ * Each band writes only its own output rows and reads one halo row above and below it from the
+ * input. fused() goes from the decoded image to the filtered mask per band, keeping only three
+ * median rows and three threshold rows per band, so the intermediate images are never built.
+ */
+public class TiledExecutor {
+
+    public static final int DEFAULT_BAND_HEIGHT = 32;
+
+    private interface Band {
+
+        void run(int y0, int y1);
+
+    }
+
+    final ForkJoinPool pool;
+    final int bandHeight;
+
+    public TiledExecutor(ForkJoinPool pool, int bandHeight) {
+        if (bandHeight < 1) {
+            throw new IllegalArgumentException("Band height must be positive, got " + bandHeight);
+        }
+        this.pool = pool;
+        this.bandHeight = bandHeight;
+    }
+
+    public TiledExecutor() {
+        this(ForkJoinPool.commonPool(), DEFAULT_BAND_HEIGHT);
+    }
+
+    public void median(PackedImage image, PackedImage medianImage) {
+        forEachBand(image.height, (y0, y1) -> {
+            for (int y = y0; y < y1; ++y) {
+                MedianFilter.median3x3Row(image, y, medianImage.pixels, y * image.width);
+            }
+        });
+    }
+
+    public void granularity(BinaryMask mask, BinaryMask granularity) {
+        forEachBand(mask.height, (y0, y1) -> {
+            long[] counter = new long[4];
+            for (int y = y0; y < y1; ++y) {
+                int row = y * mask.words;
+                if (y == 0 || y == mask.height - 1) {
+                    Arrays.fill(granularity.bits, row, row + mask.words, 0L);
+                } else {
+                    mask.majorityRow(mask.bits, row - mask.words, row, row + mask.words, granularity.bits, row, counter);
+                }
+            }
+        });
+    }
+
+    // several masks band by band, granularity[i] is the result of masks[i]
+    public void granularity(BinaryMask[] masks, BinaryMask[] granularity) {
+        int height = masks[0].height;
+        int words = masks[0].words;
+        forEachBand(height, (y0, y1) -> {
+            long[] counter = new long[4];
+            for (int y = y0; y < y1; ++y) {
+                int row = y * words;
+                for (int m = 0; m < masks.length; ++m) {
+                    if (y == 0 || y == height - 1) {
+                        Arrays.fill(granularity[m].bits, row, row + words, 0L);
+                    } else {
+                        masks[m].majorityRow(masks[m].bits, row - words, row, row + words, granularity[m].bits, row,
+                                counter);
+                    }
+                }
+            }
+        });
+    }
+
+    // median, threshold and granularity in one pass per band, same result as running them in turn
+    public void fused(PackedImage image, Main.Channel channel, BinaryMask granularity) {
+        fused(image, channel, Main.getThreshold(channel), granularity);
+    }
+
+    // With a threshold other than the fixed one, e.g. RunningHistogram.getThreshold
+    public void fused(PackedImage image, Main.Channel channel, int threshold, BinaryMask granularity) {
+        int width = image.width;
+        int height = image.height;
+        int words = granularity.words;
+        forEachBand(height, (y0, y1) -> {
+            int[] medianRow = new int[width];
+            // threshold rows y - 1, y and y + 1 live in slot (row % 3)
+            long[] ring = new long[3 * words];
+            long[] counter = new long[4];
+            int ready = Math.max(y0 - 1, 0);
+            for (int y = y0; y < y1; ++y) {
+                int last = Math.min(y + 1, height - 1);
+                for (; ready <= last; ++ready) {
+                    MedianFilter.median3x3Row(image, ready, medianRow, 0);
+                    Main.getBinaryMaskRow(medianRow, 0, width, channel, threshold, ring, (ready % 3) * words);
+                }
+                int row = y * words;
+                if (y == 0 || y == height - 1) {
+                    Arrays.fill(granularity.bits, row, row + words, 0L);
+                } else {
+                    granularity.majorityRow(ring, ((y - 1) % 3) * words, (y % 3) * words, ((y + 1) % 3) * words,
+                            granularity.bits, row, counter);
+                }
+            }
+        });
+    }
+
+    private void forEachBand(int height, Band band) {
+        if (height <= bandHeight) {
+            band.run(0, height);
+            return;
+        }
+        pool.invoke(new BandAction(band, 0, height));
+    }
+
+    private class BandAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Band band;
+        private final int y0;
+        private final int y1;
+
+        BandAction(Band band, int y0, int y1) {
+            this.band = band;
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected void compute() {
+            if (y1 - y0 <= bandHeight) {
+                band.run(y0, y1);
+                return;
+            }
+            int bands = (y1 - y0 + bandHeight - 1) / bandHeight;
+            int middle = y0 + (bands / 2) * bandHeight;
+            invokeAll(new BandAction(band, y0, middle), new BandAction(band, middle, y1));
+        }
+
+    }
+
+}
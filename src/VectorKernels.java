@@ -0,0 +1,207 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The channel kernels with the incubating Vector API, one pixel per int lane.
+ *
+ * Needs --add-modules jdk.incubator.vector to compile and run, ChannelKernels only loads this
+ * class by name so the rest of the code runs without the module. Results are bit identical to
+ * ScalarKernels, row tails shorter than a vector go through the scalar code.
+ */
+public class VectorKernels implements ChannelKernels {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    // lane i reads raw byte 2 * i, the high byte of pixel i
+    private static final int[] EVEN = new int[LANES];
+
+    static {
+        for (int i = 0; i < LANES; ++i) {
+            EVEN[i] = 2 * i;
+        }
+    }
+
+    // column sums of three rows per channel, with the first and last column repeated for the clamp
+    private static final class ColumnSums {
+
+        final int[] reds;
+        final int[] greens;
+        final int[] blues;
+
+        ColumnSums(int length) {
+            reds = new int[length];
+            greens = new int[length];
+            blues = new int[length];
+        }
+
+    }
+
+    // the column sums of the widest frame so far, kept per thread as the kernels are shared
+    private final ThreadLocal<ColumnSums> columnSums = new ThreadLocal<>();
+
+    @Override
+    public String getName() {
+        return "vector" + SPECIES.vectorBitSize();
+    }
+
+    @Override
+    public void decode(int[] rawData, PackedImage image) {
+        int[] pixels = image.pixels;
+        int index = 0;
+        for (; index <= pixels.length - LANES; index += LANES) {
+            IntVector h = IntVector.fromArray(SPECIES, rawData, 2 * index, EVEN, 0);
+            IntVector l = IntVector.fromArray(SPECIES, rawData, 2 * index + 1, EVEN, 0);
+            IntVector r = h.and(0xF8);
+            IntVector g = h.and(0x07).lanewise(VectorOperators.LSHL, 5)
+                    .or(l.and(0xE0).lanewise(VectorOperators.LSHR, 3));
+            IntVector b = l.and(0x1F).lanewise(VectorOperators.LSHL, 3);
+            pack(r, g, b).intoArray(pixels, index);
+        }
+        for (; index < pixels.length; ++index) {
+            pixels[index] = ChromaTable.decode(rawData[2 * index], rawData[2 * index + 1]);
+        }
+    }
+
+    @Override
+    public void binaryImage(PackedImage image, Main.Channel channel, PackedImage binary) {
+        int[] src = image.pixels;
+        int[] dst = binary.pixels;
+        int on = 0xFF << channel.shift;
+        IntVector zero = IntVector.zero(SPECIES);
+        int i = 0;
+        for (; i <= src.length - LANES; i += LANES) {
+            zero.blend(on, chroma(IntVector.fromArray(SPECIES, src, i), channel)).intoArray(dst, i);
+        }
+        for (; i < src.length; ++i) {
+            dst[i] = Main.isChroma(src[i], channel) ? on : 0;
+        }
+    }
+
+    @Override
+    public void binaryMask(PackedImage image, Main.Channel channel, BinaryMask mask) {
+        int width = image.width;
+        int[] pixels = image.pixels;
+        long[] bits = mask.bits;
+        for (int y = 0; y < image.height; ++y) {
+            int offset = y * width;
+            int word = y * mask.words;
+            long value = 0;
+            int x = 0;
+            // LANES divides 64, so a vector never straddles two words
+            for (; x <= width - LANES; x += LANES) {
+                value |= chroma(IntVector.fromArray(SPECIES, pixels, offset + x), channel).toLong() << (x & 63);
+                if (((x + LANES) & 63) == 0) {
+                    bits[word++] = value;
+                    value = 0;
+                }
+            }
+            if (x == width) {
+                if ((width & 63) != 0) {
+                    bits[word] = value;
+                }
+                continue;
+            }
+            for (; x < width; ++x) {
+                if (Main.isChroma(pixels[offset + x], channel)) {
+                    value |= 1L << x;
+                }
+                if ((x & 63) == 63 || x == width - 1) {
+                    bits[word++] = value;
+                    value = 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void average3x3(PackedImage image, PackedImage avgImage) {
+        int width = image.width;
+        int height = image.height;
+        int[] src = image.pixels;
+        int[] dst = avgImage.pixels;
+        ColumnSums sums = columnSums.get();
+        if (sums == null || sums.reds.length < width + 2) {
+            sums = new ColumnSums(width + 2);
+            columnSums.set(sums);
+        }
+        int[] reds = sums.reds;
+        int[] greens = sums.greens;
+        int[] blues = sums.blues;
+        for (int y = 0; y < height; ++y) {
+            int above = Math.max(y - 1, 0) * width;
+            int current = y * width;
+            int below = Math.min(y + 1, height - 1) * width;
+            int x = 0;
+            for (; x <= width - LANES; x += LANES) {
+                IntVector a = IntVector.fromArray(SPECIES, src, above + x);
+                IntVector c = IntVector.fromArray(SPECIES, src, current + x);
+                IntVector b = IntVector.fromArray(SPECIES, src, below + x);
+                channel(a, 16).add(channel(c, 16)).add(channel(b, 16)).intoArray(reds, x + 1);
+                channel(a, 8).add(channel(c, 8)).add(channel(b, 8)).intoArray(greens, x + 1);
+                channel(a, 0).add(channel(c, 0)).add(channel(b, 0)).intoArray(blues, x + 1);
+            }
+            for (; x < width; ++x) {
+                int a = src[above + x];
+                int c = src[current + x];
+                int b = src[below + x];
+                reds[x + 1] = PackedImage.red(a) + PackedImage.red(c) + PackedImage.red(b);
+                greens[x + 1] = PackedImage.green(a) + PackedImage.green(c) + PackedImage.green(b);
+                blues[x + 1] = PackedImage.blue(a) + PackedImage.blue(c) + PackedImage.blue(b);
+            }
+            reds[0] = reds[1];
+            greens[0] = greens[1];
+            blues[0] = blues[1];
+            reds[width + 1] = reds[width];
+            greens[width + 1] = greens[width];
+            blues[width + 1] = blues[width];
+            x = 0;
+            for (; x <= width - LANES; x += LANES) {
+                pack(divideBy9(sum3(reds, x)), divideBy9(sum3(greens, x)), divideBy9(sum3(blues, x)))
+                        .intoArray(dst, current + x);
+            }
+            for (; x < width; ++x) {
+                int r = (reds[x] + reds[x + 1] + reds[x + 2]) / 9;
+                int g = (greens[x] + greens[x + 1] + greens[x + 2]) / 9;
+                int b = (blues[x] + blues[x + 1] + blues[x + 2]) / 9;
+                dst[current + x] = PackedImage.pack(r, g, b);
+            }
+        }
+    }
+
+    private static VectorMask<Integer> chroma(IntVector pixels, Main.Channel channel) {
+        IntVector r = channel(pixels, 16);
+        IntVector g = channel(pixels, 8);
+        IntVector b = channel(pixels, 0);
+        int threshold = Main.getThreshold(channel);
+        switch (channel) {
+            case RED:
+                return r.add(r).sub(g).sub(b).compare(VectorOperators.GT, threshold);
+            case GREEN:
+                return g.add(g).sub(r).sub(b).compare(VectorOperators.GT, threshold);
+            default:
+                return b.add(b).sub(r).sub(g).compare(VectorOperators.GT, threshold);
+        }
+    }
+
+    private static IntVector channel(IntVector pixels, int shift) {
+        return pixels.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+    }
+
+    private static IntVector pack(IntVector r, IntVector g, IntVector b) {
+        return r.lanewise(VectorOperators.LSHL, 16).or(g.lanewise(VectorOperators.LSHL, 8)).or(b);
+    }
+
+    private static IntVector sum3(int[] sums, int x) {
+        return IntVector.fromArray(SPECIES, sums, x)
+                .add(IntVector.fromArray(SPECIES, sums, x + 1))
+                .add(IntVector.fromArray(SPECIES, sums, x + 2));
+    }
+
+    // exact for sums of nine 8 bit values, at most 2295
+    private static IntVector divideBy9(IntVector sum) {
+        return sum.mul(7282).lanewise(VectorOperators.LSHR, 16);
+    }
+
+}
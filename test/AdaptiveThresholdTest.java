@@ -0,0 +1,135 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveThresholdTest {
+
+    static final FrameGeometry GEOMETRY = new FrameGeometry(70, 50);
+
+    static void put(int[] data, int index, int r, int g, int b) {
+        data[2 * index] = (r & 0xF8) | (g >> 5);
+        data[2 * index + 1] = ((g << 3) & 0xE0) | (b >> 3);
+    }
+
+    // A scene lit in red, with one saturated red object whose chroma score is far above the cast
+    static int[] tintedFrame(Random random) {
+        int[] data = new int[GEOMETRY.getFrameSize()];
+        for (int i = 0; i < GEOMETRY.getPixelCount(); ++i) {
+            put(data, i, 80 + random.nextInt(48), 40 + random.nextInt(32), 40 + random.nextInt(32));
+        }
+        int x0 = 10 + random.nextInt(30);
+        int y0 = 10 + random.nextInt(20);
+        for (int y = y0; y < y0 + 12; ++y) {
+            for (int x = x0; x < x0 + 16; ++x) {
+                put(data, y * GEOMETRY.width + x, 248, 16, 16);
+            }
+        }
+        return data;
+    }
+
+    static RunningHistogram recording(Random random) {
+        RunningHistogram recording = new RunningHistogram();
+        ColorHistogram histogram = new ColorHistogram();
+        for (int frame = 0; frame < 5; ++frame) {
+            histogram.fillRaw(tintedFrame(random));
+            recording.add(histogram);
+        }
+        return recording;
+    }
+
+    static DetectionContext context(RunningHistogram recording, boolean medianFilter, TiledExecutor tiles) {
+        DetectionContext context = new DetectionContext(GEOMETRY);
+        context.recording = recording;
+        context.adaptiveThreshold = true;
+        context.medianFilter = medianFilter;
+        context.tiles = tiles;
+        return context;
+    }
+
+    @Test
+    void tiledAndSequentialPathsAgree() {
+        Random random = new Random(21);
+        RunningHistogram recording = recording(random);
+        assertTrue(recording.getThreshold(Main.Channel.RED) > Main.getThreshold(Main.Channel.RED));
+        DetectionContext sequential = context(recording, true, null);
+        DetectionContext fixed = new DetectionContext(GEOMETRY);
+        for (int bandHeight : new int[] {1, 2, 3, 8}) {
+            DetectionContext tiled = context(recording, true, new TiledExecutor(ForkJoinPool.commonPool(), bandHeight));
+            for (int frame = 0; frame < 5; ++frame) {
+                int[] data = tintedFrame(random);
+                Main.filter(sequential, data, Main.Channel.RED);
+                Main.filter(tiled, data, Main.Channel.RED);
+                assertArrayEquals(sequential.filtered.bits, tiled.filtered.bits, "band height " + bandHeight);
+                // and the cast really changes the mask, with the fixed threshold the background is lit
+                Main.filter(fixed, data, Main.Channel.RED);
+                assertFalse(Arrays.equals(fixed.filtered.bits, sequential.filtered.bits));
+            }
+        }
+    }
+
+    @Test
+    void chromaTableUsesTheAdaptiveThresholds() {
+        Random random = new Random(22);
+        RunningHistogram recording = recording(random);
+        DetectionContext context = context(recording, false, null);
+        PackedImage image = new PackedImage(GEOMETRY.width, GEOMETRY.height);
+        BinaryMask expected = new BinaryMask(GEOMETRY.width, GEOMETRY.height);
+        BinaryMask mask = new BinaryMask(GEOMETRY.width, GEOMETRY.height);
+        BinaryMask[] masks = new BinaryMask[3];
+        for (int c = 0; c < 3; ++c) {
+            masks[c] = new BinaryMask(GEOMETRY.width, GEOMETRY.height);
+        }
+        for (int frame = 0; frame < 5; ++frame) {
+            int[] data = tintedFrame(random);
+            Main.getImage(data, image);
+            ByteBuffer bytes = ByteBuffer.allocate(data.length);
+            for (int value : data) {
+                bytes.put((byte) value);
+            }
+            bytes.flip();
+            ChromaTable.decodeThreshold(ChromaTable.table(context), data, masks[0], masks[1], masks[2]);
+            for (Main.Channel channel : Main.Channel.values()) {
+                Main.getBinaryMask(image, channel, recording.getThreshold(channel), expected);
+                ChromaTable.decodeThreshold(ChromaTable.table(context), data, channel, mask);
+                assertArrayEquals(expected.bits, mask.bits, channel.toString());
+                ChromaTable.decodeThreshold(ChromaTable.table(context), bytes, channel, mask);
+                assertArrayEquals(expected.bits, mask.bits, channel + " bytes");
+                assertArrayEquals(expected.bits, masks[channel.ordinal()].bits, channel + " all channels");
+            }
+        }
+    }
+
+    @Test
+    void detectAllMatchesDetect() {
+        Main.DetectionStrategy strategy = Main.DetectionStrategy.CONNECTED_COMPONENTS;
+        for (boolean medianFilter : new boolean[] {true, false}) {
+            for (TiledExecutor tiles : new TiledExecutor[] {null, new TiledExecutor(ForkJoinPool.commonPool(), 3)}) {
+                // two equal recordings, each context adds every frame once
+                DetectionContext all = context(recording(new Random(23)), medianFilter, tiles);
+                DetectionContext single = context(recording(new Random(23)), medianFilter, tiles);
+                Random random = new Random(24);
+                for (int frame = 0; frame < 5; ++frame) {
+                    int[] data = tintedFrame(random);
+                    EnumMap<Main.Channel, List<Main.Rect>> rects = Main.detectAll(all, data, strategy);
+                    Main.record(single, data);
+                    for (Main.Channel channel : Main.Channel.values()) {
+                        Main.filter(single, data, channel);
+                        assertEquals(DetectAllTest.describe(Main.search(single, strategy)),
+                                DetectAllTest.describe(rects.get(channel)),
+                                channel + " median " + medianFilter + " tiles " + (tiles != null));
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class BinaryMaskTest {
+
+    // Around one and two words, so the last word of a row is full, short or a single bit
+    static final int[] WIDTHS = {1, 2, 3, 5, 63, 64, 65, 100, 127, 128, 129, 191, 200};
+
+    static boolean on(BinaryMask mask, int x, int y) {
+        return x >= 0 && y >= 0 && x < mask.width && y < mask.height && mask.get(x, y);
+    }
+
+    // Random pixels, the frame border and both sides of every word boundary lit at random too
+    static BinaryMask mask(Random random, int width, int height) {
+        BinaryMask mask = DistributionTest.randomMask(random, width, height, 0.2 + 0.6 * random.nextDouble());
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                boolean edge = x == 0 || y == 0 || x == width - 1 || y == height - 1 || (x & 63) == 0 || (x & 63) == 63;
+                if (edge && random.nextBoolean()) {
+                    mask.set(x, y, random.nextBoolean());
+                }
+            }
+        }
+        return mask;
+    }
+
+    static BinaryMask majority(BinaryMask mask) {
+        BinaryMask out = new BinaryMask(mask.width, mask.height);
+        for (int y = 1; y < mask.height - 1; ++y) {
+            for (int x = 1; x < mask.width - 1; ++x) {
+                int count = 0;
+                for (int dy = -1; dy <= 1; ++dy) {
+                    for (int dx = -1; dx <= 1; ++dx) {
+                        if ((dx != 0 || dy != 0) && on(mask, x + dx, y + dy)) {
+                            count++;
+                        }
+                    }
+                }
+                out.set(x, y, count > 4);
+            }
+        }
+        return out;
+    }
+
+    // Erode with all, dilate with any of the 3x3 neighbourhood, pixels outside the frame are off
+    static BinaryMask neighbourhood(BinaryMask mask, boolean all) {
+        BinaryMask out = new BinaryMask(mask.width, mask.height);
+        for (int y = 0; y < mask.height; ++y) {
+            for (int x = 0; x < mask.width; ++x) {
+                int count = 0;
+                for (int dy = -1; dy <= 1; ++dy) {
+                    for (int dx = -1; dx <= 1; ++dx) {
+                        if (on(mask, x + dx, y + dy)) {
+                            count++;
+                        }
+                    }
+                }
+                out.set(x, y, all ? count == 9 : count > 0);
+            }
+        }
+        return out;
+    }
+
+    static BinaryMask downsample(BinaryMask mask) {
+        BinaryMask out = new BinaryMask((mask.width + 1) / 2, (mask.height + 1) / 2);
+        for (int y = 0; y < out.height; ++y) {
+            for (int x = 0; x < out.width; ++x) {
+                out.set(x, y, on(mask, 2 * x, 2 * y) || on(mask, 2 * x + 1, 2 * y)
+                        || on(mask, 2 * x, 2 * y + 1) || on(mask, 2 * x + 1, 2 * y + 1));
+            }
+        }
+        return out;
+    }
+
+    static void assertSame(BinaryMask expected, BinaryMask mask, String message) {
+        assertEquals(expected.width, mask.width, message);
+        assertEquals(expected.height, mask.height, message);
+        // also checks the bits past the width stayed zero
+        assertArrayEquals(expected.bits, mask.bits, message);
+    }
+
+    @Test
+    void filtersMatchBruteForce() {
+        Random random = new Random(7);
+        for (int width : WIDTHS) {
+            for (int height = 1; height <= 6; ++height) {
+                for (int trial = 0; trial < 3; ++trial) {
+                    String size = width + "x" + height;
+                    BinaryMask mask = mask(random, width, height);
+                    BinaryMask out = new BinaryMask(width, height);
+                    BinaryMask scratch = new BinaryMask(width, height);
+                    mask.majority(out);
+                    assertSame(majority(mask), out, "majority " + size);
+                    Main.granularityFilter(mask, out);
+                    assertSame(majority(mask), out, "granularityFilter " + size);
+                    mask.erode(out);
+                    assertSame(neighbourhood(mask, true), out, "erode " + size);
+                    mask.dilate(out);
+                    assertSame(neighbourhood(mask, false), out, "dilate " + size);
+                    mask.open(out, scratch);
+                    assertSame(neighbourhood(neighbourhood(mask, true), false), out, "open " + size);
+                    mask.close(out, scratch);
+                    assertSame(neighbourhood(neighbourhood(mask, false), true), out, "close " + size);
+                    BinaryMask half = new BinaryMask((width + 1) / 2, (height + 1) / 2);
+                    mask.downsample(half);
+                    assertSame(downsample(mask), half, "downsample " + size);
+                }
+            }
+        }
+    }
+
+    @Test
+    void copyRegionMatchesBruteForce() {
+        Random random = new Random(77);
+        for (int width : WIDTHS) {
+            int height = 1 + random.nextInt(6);
+            BinaryMask mask = mask(random, width, height);
+            for (int trial = 0; trial < 20; ++trial) {
+                // regions starting on and next to word boundaries, and running past the right edge
+                int x0 = trial < 4 ? Math.min(width - 1, new int[] {0, 63, 64, 65}[trial]) : random.nextInt(width);
+                int y0 = random.nextInt(height);
+                BinaryMask region = new BinaryMask(1 + random.nextInt(width + 70), 1 + random.nextInt(height - y0));
+                region.copyRegion(mask, x0, y0);
+                BinaryMask expected = new BinaryMask(region.width, region.height);
+                for (int y = 0; y < region.height; ++y) {
+                    for (int x = 0; x < region.width; ++x) {
+                        expected.set(x, y, on(mask, x0 + x, y0 + y));
+                    }
+                }
+                assertSame(expected, region, "region at " + x0 + "," + y0 + " of " + width + "x" + height);
+            }
+        }
+    }
+
+}
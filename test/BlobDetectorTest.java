@@ -0,0 +1,104 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class BlobDetectorTest {
+
+    // minX,minY,maxX,maxY,area,sumX,sumY of each 8-connected component found by flood fill
+    static List<String> floodFill(BinaryMask mask) {
+        boolean[] seen = new boolean[mask.width * mask.height];
+        List<String> blobs = new ArrayList<>();
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        for (int y = 0; y < mask.height; ++y) {
+            for (int x = 0; x < mask.width; ++x) {
+                if (!mask.get(x, y) || seen[y * mask.width + x]) {
+                    continue;
+                }
+                int minX = x, minY = y, maxX = x, maxY = y, area = 0;
+                long sumX = 0, sumY = 0;
+                seen[y * mask.width + x] = true;
+                queue.add(new int[] {x, y});
+                while (!queue.isEmpty()) {
+                    int[] pixel = queue.poll();
+                    int px = pixel[0];
+                    int py = pixel[1];
+                    minX = Math.min(minX, px);
+                    minY = Math.min(minY, py);
+                    maxX = Math.max(maxX, px);
+                    maxY = Math.max(maxY, py);
+                    area++;
+                    sumX += px;
+                    sumY += py;
+                    for (int dy = -1; dy <= 1; ++dy) {
+                        for (int dx = -1; dx <= 1; ++dx) {
+                            int nx = px + dx;
+                            int ny = py + dy;
+                            if (nx >= 0 && ny >= 0 && nx < mask.width && ny < mask.height
+                                    && mask.get(nx, ny) && !seen[ny * mask.width + nx]) {
+                                seen[ny * mask.width + nx] = true;
+                                queue.add(new int[] {nx, ny});
+                            }
+                        }
+                    }
+                }
+                blobs.add(describe(minX, minY, maxX, maxY, area, (double) sumX / area, (double) sumY / area));
+            }
+        }
+        Collections.sort(blobs);
+        return blobs;
+    }
+
+    static String describe(int minX, int minY, int maxX, int maxY, int area, double centroidX, double centroidY) {
+        return minX + "," + minY + "," + maxX + "," + maxY + "," + area + ","
+                + String.format("%.6f,%.6f", centroidX, centroidY);
+    }
+
+    static List<String> detect(BlobDetector detector, BinaryMask mask) {
+        List<String> blobs = new ArrayList<>();
+        for (BlobDetector.Blob blob : detector.detect(mask)) {
+            Main.Rect rect = blob.rect;
+            int minX = rect.x - rect.w / 2;
+            int minY = rect.y - rect.h / 2;
+            blobs.add(describe(minX, minY, minX + rect.w, minY + rect.h, blob.area, blob.centroidX, blob.centroidY));
+        }
+        Collections.sort(blobs);
+        return blobs;
+    }
+
+    @Test
+    void matchesFloodFill() {
+        Random random = new Random(9);
+        for (int trial = 0; trial < 80; ++trial) {
+            int width = 1 + random.nextInt(150);
+            int height = 1 + random.nextInt(40);
+            double density = 0.1 + 0.6 * random.nextDouble();
+            BinaryMask mask = new BinaryMask(width, height);
+            for (int y = 0; y < height; ++y) {
+                for (int x = 0; x < width; ++x) {
+                    mask.set(x, y, random.nextDouble() < density);
+                }
+            }
+            BlobDetector detector = new BlobDetector(width, height);
+            assertEquals(floodFill(mask), detect(detector, mask), width + "x" + height);
+            // and again with the same detector, its arrays are reused
+            assertEquals(floodFill(mask), detect(detector, mask), width + "x" + height + " reused");
+        }
+    }
+
+    @Test
+    void checkerboardIsOneBlob() {
+        BinaryMask mask = new BinaryMask(65, 9);
+        for (int y = 0; y < mask.height; ++y) {
+            for (int x = 0; x < mask.width; ++x) {
+                mask.set(x, y, (x + y) % 2 == 0);
+            }
+        }
+        assertEquals(1, new BlobDetector(mask.width, mask.height).detect(mask).size());
+    }
+
+}
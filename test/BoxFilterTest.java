@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class BoxFilterTest {
+
+    // Averages every window pixel by pixel, outside pixels mapped back by the border policy
+    static PackedImage bruteForce(PackedImage image, int radius, BoxFilter.Border border) {
+        PackedImage result = new PackedImage(image.width, image.height);
+        int area = (2 * radius + 1) * (2 * radius + 1);
+        for (int y = 0; y < image.height; ++y) {
+            for (int x = 0; x < image.width; ++x) {
+                int r = 0, g = 0, b = 0;
+                for (int wy = y - radius; wy <= y + radius; ++wy) {
+                    for (int wx = x - radius; wx <= x + radius; ++wx) {
+                        int pixel = image.pixels[BoxFilter.map(wy, image.height, border) * image.width
+                                + BoxFilter.map(wx, image.width, border)];
+                        r += PackedImage.red(pixel);
+                        g += PackedImage.green(pixel);
+                        b += PackedImage.blue(pixel);
+                    }
+                }
+                result.pixels[y * image.width + x] = PackedImage.pack(r / area, g / area, b / area);
+            }
+        }
+        return result;
+    }
+
+    static PackedImage randomImage(Random random, int width, int height) {
+        PackedImage image = new PackedImage(width, height);
+        for (int i = 0; i < image.pixels.length; ++i) {
+            image.pixels[i] = random.nextInt(1 << 24);
+        }
+        return image;
+    }
+
+    @Test
+    void matchesBruteForceMean() {
+        Random random = new Random(6);
+        for (int trial = 0; trial < 60; ++trial) {
+            int width = 1 + random.nextInt(30);
+            int height = 1 + random.nextInt(30);
+            int radius = random.nextInt(5);
+            BoxFilter.Border border = BoxFilter.Border.values()[trial % 2];
+            BoxFilter filter = new BoxFilter(width, height, radius, border);
+            // the tables are reused, so every frame after the first checks they are rebuilt correctly
+            for (int frame = 0; frame < 3; ++frame) {
+                PackedImage image = randomImage(random, width, height);
+                PackedImage average = new PackedImage(width, height);
+                filter.apply(image, average);
+                assertArrayEquals(bruteForce(image, radius, border).pixels, average.pixels,
+                        width + "x" + height + " radius " + radius + " " + border);
+            }
+        }
+    }
+
+    @Test
+    void scalarAverageFollowsFrameSize() {
+        Random random = new Random(66);
+        for (int[] size : new int[][] {{40, 40}, {17, 5}, {40, 40}, {1, 1}}) {
+            PackedImage image = randomImage(random, size[0], size[1]);
+            PackedImage average = new PackedImage(size[0], size[1]);
+            ChannelKernels.SCALAR.average3x3(image, average);
+            assertArrayEquals(bruteForce(image, 1, BoxFilter.Border.CLAMP).pixels, average.pixels);
+        }
+    }
+
+}
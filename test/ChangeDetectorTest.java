@@ -0,0 +1,103 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ChangeDetectorTest {
+
+    // Not a multiple of the tile size, so the last row and column of tiles are short
+    static final FrameGeometry GEOMETRY = new FrameGeometry(70, 50);
+    static final Main.DetectionStrategy STRATEGY = Main.DetectionStrategy.CONNECTED_COMPONENTS;
+
+    // A flat grey scene, red raised by tint, with a red block at (x0, y0)
+    static int[] frame(int tint, int x0, int y0) {
+        int[] data = new int[GEOMETRY.getFrameSize()];
+        for (int i = 0; i < GEOMETRY.getPixelCount(); ++i) {
+            AdaptiveThresholdTest.put(data, i, 96 + tint, 96, 96);
+        }
+        for (int y = y0; y < y0 + 8; ++y) {
+            for (int x = x0; x < x0 + 12; ++x) {
+                AdaptiveThresholdTest.put(data, y * GEOMETRY.width + x, 248, 16, 16);
+            }
+        }
+        return data;
+    }
+
+    static DetectionContext context() {
+        DetectionContext context = new DetectionContext(GEOMETRY);
+        context.recording = new RunningHistogram();
+        return context;
+    }
+
+    @Test
+    void skipsUnchangedFramesAndStillRecordsThem() {
+        ChangeDetector changes = new ChangeDetector(GEOMETRY);
+        DetectionContext context = context();
+        int[] data = frame(0, 20, 20);
+        List<Main.Rect> expected = Main.detect(new DetectionContext(GEOMETRY), data, Main.Channel.RED, STRATEGY);
+        assertEquals(1, expected.size());
+        for (int frame = 0; frame < 5; ++frame) {
+            List<Main.Rect> rects = changes.detect(context, data.clone(), Main.Channel.RED, STRATEGY);
+            assertEquals(DetectAllTest.describe(expected), DetectAllTest.describe(rects), "frame " + frame);
+            // the caller gets copies
+            rects.clear();
+        }
+        assertEquals(1, changes.getDetected());
+        assertEquals(4, changes.getSkipped());
+        assertEquals(5, context.recording.getFrameCount());
+    }
+
+    @Test
+    void oneChangedTileForcesDetection() {
+        int tileSize = ChangeDetector.DEFAULT_TILE_SIZE;
+        int[] reference = frame(0, 20, 20);
+        // every tile, including the short ones on the right and bottom edges
+        for (int ty = 0; ty < GEOMETRY.height; ty += tileSize) {
+            for (int tx = 0; tx < GEOMETRY.width; tx += tileSize) {
+                ChangeDetector changes = new ChangeDetector(GEOMETRY);
+                DetectionContext context = context();
+                changes.detect(context, reference, Main.Channel.RED, STRATEGY);
+                int[] data = reference.clone();
+                // only this tile turns white, every other tile is the same
+                for (int y = ty; y < Math.min(ty + tileSize, GEOMETRY.height); ++y) {
+                    for (int x = tx; x < Math.min(tx + tileSize, GEOMETRY.width); ++x) {
+                        AdaptiveThresholdTest.put(data, y * GEOMETRY.width + x, 255, 255, 255);
+                    }
+                }
+                assertTrue(changes.changed(data), "tile at " + tx + "," + ty);
+                changes.detect(context, data, Main.Channel.RED, STRATEGY);
+                assertEquals(2, changes.getDetected(), "tile at " + tx + "," + ty);
+                assertEquals(0, changes.getSkipped());
+            }
+        }
+    }
+
+    @Test
+    void changeMustExceedTheThresholdAndDriftAddsUp() {
+        ChangeDetector changes = new ChangeDetector(GEOMETRY);
+        DetectionContext context = context();
+        changes.detect(context, frame(0, 20, 20), Main.Channel.RED, STRATEGY);
+        // red up by 8 everywhere is exactly the threshold, not over it
+        assertFalse(changes.changed(frame(8, 20, 20)));
+        changes.detect(context, frame(8, 20, 20), Main.Channel.RED, STRATEGY);
+        assertEquals(1, changes.getSkipped());
+        // compared with the detected frame, not the last one, so two steps of 8 count as 16
+        changes.detect(context, frame(16, 20, 20), Main.Channel.RED, STRATEGY);
+        assertEquals(2, changes.getDetected());
+        // the object moving is a change too, and the new rects come back
+        List<Main.Rect> rects = changes.detect(context, frame(16, 40, 30), Main.Channel.RED, STRATEGY);
+        List<Main.Rect> expected = Main.detect(new DetectionContext(GEOMETRY), frame(16, 40, 30), Main.Channel.RED,
+                STRATEGY);
+        assertEquals(DetectAllTest.describe(expected), DetectAllTest.describe(rects));
+        assertEquals(3, changes.getDetected());
+        // after a reset the next frame is always detected
+        changes.reset();
+        changes.detect(context, frame(16, 40, 30), Main.Channel.RED, STRATEGY);
+        assertEquals(4, changes.getDetected());
+        assertEquals(1, changes.getSkipped());
+        assertEquals(5, context.recording.getFrameCount());
+    }
+
+}
@@ -0,0 +1,93 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class ChannelKernelsTest {
+
+    // surefire runs with --add-modules jdk.incubator.vector, so the vector kernels must load
+    static final ChannelKernels VECTOR = ChannelKernels.select("vector");
+
+    static PackedImage image(int width, int height, int[] pixels) {
+        PackedImage image = new PackedImage(width, height);
+        System.arraycopy(pixels, 0, image.pixels, 0, pixels.length);
+        return image;
+    }
+
+    // Decoded frames, full range noise and the extremes of every channel
+    static PackedImage[] sources(Random random, int width, int height) {
+        int[] rawData = new int[2 * width * height];
+        for (int i = 0; i < rawData.length; ++i) {
+            rawData[i] = random.nextInt(256);
+        }
+        PackedImage decoded = new PackedImage(width, height);
+        ChannelKernels.SCALAR.decode(rawData, decoded);
+        int[] noise = new int[width * height];
+        int[] extremes = new int[width * height];
+        int[] values = {0x000000, 0xFFFFFF, 0xFF0000, 0x00FF00, 0x0000FF, 0xFFFF00, 0x00FFFF, 0xFF00FF};
+        for (int i = 0; i < noise.length; ++i) {
+            noise[i] = random.nextInt(1 << 24);
+            extremes[i] = values[random.nextInt(values.length)];
+        }
+        return new PackedImage[] {decoded, image(width, height, noise), image(width, height, extremes)};
+    }
+
+    static void assertMatchesScalar(Random random, int width, int height) {
+        String size = width + "x" + height;
+        int[] rawData = new int[2 * width * height];
+        for (int i = 0; i < rawData.length; ++i) {
+            rawData[i] = random.nextInt(256);
+        }
+        PackedImage result = new PackedImage(width, height);
+        PackedImage expected = new PackedImage(width, height);
+        VECTOR.decode(rawData, result);
+        ChannelKernels.SCALAR.decode(rawData, expected);
+        assertArrayEquals(expected.pixels, result.pixels, "decode " + size);
+        for (PackedImage source : sources(random, width, height)) {
+            VECTOR.average3x3(source, result);
+            ChannelKernels.SCALAR.average3x3(source, expected);
+            assertArrayEquals(expected.pixels, result.pixels, "average3x3 " + size);
+            for (Main.Channel channel : Main.Channel.values()) {
+                VECTOR.binaryImage(source, channel, result);
+                ChannelKernels.SCALAR.binaryImage(source, channel, expected);
+                assertArrayEquals(expected.pixels, result.pixels, "binaryImage " + channel + " " + size);
+                BinaryMask mask = new BinaryMask(width, height);
+                BinaryMask expectedMask = new BinaryMask(width, height);
+                VECTOR.binaryMask(source, channel, mask);
+                ChannelKernels.SCALAR.binaryMask(source, channel, expectedMask);
+                assertArrayEquals(expectedMask.bits, mask.bits, "binaryMask " + channel + " " + size);
+            }
+        }
+    }
+
+    @Test
+    void vectorKernelsAreLoaded() {
+        assertTrue(VECTOR.getName().startsWith("vector"), VECTOR.getName());
+    }
+
+    @Test
+    void matchScalarAroundLaneAndWordBoundaries() {
+        Random random = new Random(14);
+        // every width up to past two mask words, so the vector loops leave every possible tail
+        for (int width = 1; width <= 140; ++width) {
+            assertMatchesScalar(random, width, 1 + width % 5);
+        }
+    }
+
+    @Test
+    void matchScalarOnRandomSizes() {
+        Random random = new Random(1414);
+        for (int trial = 0; trial < 40; ++trial) {
+            assertMatchesScalar(random, 1 + random.nextInt(300), 1 + random.nextInt(60));
+        }
+    }
+
+    @Test
+    void verifyAcceptsTheVectorKernels() {
+        for (long seed = 0; seed < 8; ++seed) {
+            assertTrue(ChannelKernels.verify(VECTOR, ChannelKernels.SCALAR, 3 + (int) seed * 17, 3 + (int) seed * 5, seed));
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CompressedRecordTest {
+
+    @TempDir
+    File directory;
+
+    // Frames that change a little from one to the next, as a recording does
+    static int[][] frames(Random random, FrameGeometry geometry, int count) {
+        int[][] frames = new int[count][];
+        for (int frame = 0; frame < count; ++frame) {
+            if (frame == 0) {
+                frames[0] = new int[geometry.getFrameSize()];
+                for (int i = 0; i < frames[0].length; ++i) {
+                    frames[0][i] = random.nextInt(256);
+                }
+                continue;
+            }
+            frames[frame] = frames[frame - 1].clone();
+            for (int change = 0; change < 10; ++change) {
+                frames[frame][random.nextInt(frames[frame].length)] = random.nextInt(256);
+            }
+        }
+        return frames;
+    }
+
+    File write(FrameGeometry geometry, int framesPerChunk, int[][] frames) throws IOException {
+        File file = new File(directory, "record.r5z");
+        try (CompressedRecord.Writer writer = new CompressedRecord.Writer(file, geometry, framesPerChunk, 6)) {
+            for (int[] frame : frames) {
+                writer.writeFrame(frame);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    void readsBackEveryFrameInAnyOrder() throws IOException {
+        Random random = new Random(24);
+        FrameGeometry geometry = new FrameGeometry(13, 7);
+        for (int[] sizes : new int[][] {{0, 4}, {1, 4}, {8, 4}, {9, 4}, {30, 1}, {30, 7}, {5, 32}}) {
+            int[][] frames = frames(random, geometry, sizes[0]);
+            File file = write(geometry, sizes[1], frames);
+            try (CompressedRecord record = new CompressedRecord(file)) {
+                assertEquals(frames.length, record.getFrameCount());
+                assertEquals(geometry, record.getGeometry());
+                int[] data = new int[geometry.getFrameSize()];
+                FrameReader reader = record.reader();
+                for (int[] frame : frames) {
+                    assertTrue(reader.nextFrame(data));
+                    assertArrayEquals(frame, data);
+                }
+                assertFalse(reader.nextFrame(data));
+                for (int read = 0; read < 3 * frames.length; ++read) {
+                    int frame = random.nextInt(frames.length);
+                    record.readFrame(frame, data);
+                    assertArrayEquals(frames[frame], data, "frame " + frame + " of " + frames.length);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsTruncatedRecords() throws IOException {
+        FrameGeometry geometry = new FrameGeometry(13, 7);
+        File file = write(geometry, 4, frames(new Random(2), geometry, 10));
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        for (int length : new int[] {0, 10, CompressedRecord.HEADER_SIZE + 5, bytes.length / 2, bytes.length - 1}) {
+            File truncated = new File(directory, "truncated.r5z");
+            Files.write(truncated.toPath(), Arrays.copyOf(bytes, length));
+            assertThrows(IOException.class, () -> new CompressedRecord(truncated).close(), "length " + length);
+        }
+    }
+
+    @Test
+    void rejectsCorruptHeadersAndIndexes() throws IOException {
+        FrameGeometry geometry = new FrameGeometry(13, 7);
+        File file = write(geometry, 4, frames(new Random(3), geometry, 10));
+        long size = file.length();
+        long indexOffset;
+        try (RandomAccessFile access = new RandomAccessFile(file, "r")) {
+            access.seek(size - CompressedRecord.FOOTER_SIZE);
+            indexOffset = access.readLong();
+        }
+        // a frame size that overflows an int, chunks too large to allocate
+        assertCorrupt(file, 4, new long[] {65536, 65536}, 4);
+        assertCorrupt(file, 4, new long[] {40000, 40000}, 4);
+        // index offsets before the chunks and overlapping the footer
+        assertCorrupt(file, size - CompressedRecord.FOOTER_SIZE, new long[] {3}, 8);
+        assertCorrupt(file, size - CompressedRecord.FOOTER_SIZE, new long[] {size - CompressedRecord.FOOTER_SIZE - 12}, 8);
+        // chunks before the header ends, past the index and of negative length
+        assertCorrupt(file, indexOffset, new long[] {4}, 8);
+        assertCorrupt(file, indexOffset + 12, new long[] {indexOffset}, 8);
+        assertCorrupt(file, indexOffset + 8, new long[] {-1}, 4);
+        assertCorrupt(file, indexOffset, new long[] {Long.MAX_VALUE}, 8);
+    }
+
+    // Overwrites the values at position in a copy of file, ints or longs, and expects the copy to be rejected
+    void assertCorrupt(File file, long position, long[] values, int valueSize) throws IOException {
+        File corrupt = new File(directory, "corrupt.r5z");
+        Files.copy(file.toPath(), corrupt.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try (RandomAccessFile access = new RandomAccessFile(corrupt, "rw")) {
+            access.seek(position);
+            for (long value : values) {
+                if (valueSize == 8) {
+                    access.writeLong(value);
+                } else {
+                    access.writeInt((int) value);
+                }
+            }
+        }
+        assertThrows(IOException.class, () -> new CompressedRecord(corrupt).close(),
+                "values " + Arrays.toString(values) + " at " + position);
+    }
+
+}
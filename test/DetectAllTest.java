@@ -0,0 +1,136 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+class DetectAllTest {
+
+    static List<int[]> record2() throws IOException {
+        List<int[]> frames = new ArrayList<>();
+        try (InputStream inputStream = Main.class.getResourceAsStream("record2");
+             RecordTokenizer tokenizer = new RecordTokenizer(inputStream)) {
+            int[] data = new int[FrameGeometry.DEFAULT.getFrameSize()];
+            while (tokenizer.nextFrame(data)) {
+                frames.add(data.clone());
+            }
+        }
+        return frames;
+    }
+
+    // Raw frames of dark noise with a few saturated red, green and blue blocks
+    static List<int[]> blocks(Random random, int count) {
+        List<int[]> frames = new ArrayList<>();
+        int width = FrameGeometry.DEFAULT.width;
+        int height = FrameGeometry.DEFAULT.height;
+        int[] colours = {0xF800, 0x07E0, 0x001F};
+        for (int frame = 0; frame < count; ++frame) {
+            int[] pixels = new int[width * height];
+            for (int i = 0; i < pixels.length; ++i) {
+                pixels[i] = random.nextInt(1 << 16) & 0x18E3;
+            }
+            for (int block = 0; block < 4; ++block) {
+                int w = 3 + random.nextInt(10);
+                int h = 3 + random.nextInt(10);
+                int x0 = random.nextInt(width - w);
+                int y0 = random.nextInt(height - h);
+                int colour = colours[random.nextInt(3)];
+                for (int y = y0; y < y0 + h; ++y) {
+                    for (int x = x0; x < x0 + w; ++x) {
+                        pixels[y * width + x] = colour;
+                    }
+                }
+            }
+            int[] data = new int[2 * pixels.length];
+            for (int i = 0; i < pixels.length; ++i) {
+                data[2 * i] = pixels[i] >> 8;
+                data[2 * i + 1] = pixels[i] & 0xFF;
+            }
+            frames.add(data);
+        }
+        return frames;
+    }
+
+    static String describe(List<Main.Rect> rects) {
+        StringBuilder builder = new StringBuilder();
+        for (Main.Rect rect : rects) {
+            builder.append('[').append(rect.x).append(',').append(rect.y).append(' ')
+                    .append(rect.w).append('x').append(rect.h).append(']');
+        }
+        return builder.toString();
+    }
+
+    // The distribution search starts from random pixels, so only the connected components are compared
+    static void assertMatchesDetect(List<int[]> frames, boolean medianFilter, boolean tiles) {
+        FrameGeometry geometry = FrameGeometry.DEFAULT;
+        Main.DetectionStrategy strategy = Main.DetectionStrategy.CONNECTED_COMPONENTS;
+        DetectionContext all = new DetectionContext(geometry);
+        DetectionContext single = new DetectionContext(geometry);
+        for (DetectionContext context : new DetectionContext[] {all, single}) {
+            context.medianFilter = medianFilter;
+            context.tiles = tiles ? new TiledExecutor(ForkJoinPool.commonPool(), 8) : null;
+        }
+        for (int frame = 0; frame < frames.size(); ++frame) {
+            int[] data = frames.get(frame);
+            EnumMap<Main.Channel, List<Main.Rect>> rects = Main.detectAll(all, data, strategy);
+            for (Main.Channel channel : Main.Channel.values()) {
+                assertEquals(describe(Main.detect(single, data, channel, strategy)), describe(rects.get(channel)),
+                        "frame " + frame + " " + channel);
+            }
+        }
+    }
+
+    @Test
+    void matchesDetectPerChannel() throws IOException {
+        List<int[]> frames = record2();
+        frames.addAll(blocks(new Random(22), 30));
+        assertMatchesDetect(frames, true, false);
+        assertMatchesDetect(frames, false, false);
+        assertMatchesDetect(frames, true, true);
+    }
+
+    @Test
+    void granularityOfAllMasksMatchesOneByOne() {
+        Random random = new Random(222);
+        for (int trial = 0; trial < 30; ++trial) {
+            int width = 3 + random.nextInt(150);
+            int height = 3 + random.nextInt(80);
+            BinaryMask[] masks = new BinaryMask[3];
+            BinaryMask[] expected = new BinaryMask[3];
+            BinaryMask[] sequential = new BinaryMask[3];
+            BinaryMask[] tiled = new BinaryMask[3];
+            for (int m = 0; m < 3; ++m) {
+                masks[m] = DistributionTest.randomMask(random, width, height, 0.5);
+                expected[m] = new BinaryMask(width, height);
+                Main.granularityFilter(masks[m], expected[m]);
+                sequential[m] = new BinaryMask(width, height);
+                tiled[m] = new BinaryMask(width, height);
+            }
+            Main.granularityFilter(masks, sequential);
+            new TiledExecutor(ForkJoinPool.commonPool(), 4).granularity(masks, tiled);
+            for (int m = 0; m < 3; ++m) {
+                assertArrayEquals(expected[m].bits, sequential[m].bits, width + "x" + height + " mask " + m);
+                assertArrayEquals(expected[m].bits, tiled[m].bits, width + "x" + height + " mask " + m + " tiled");
+            }
+        }
+    }
+
+    @Test
+    void searchesThroughThePyramid() throws IOException {
+        List<int[]> frames = record2();
+        DetectionContext context = new DetectionContext(FrameGeometry.DEFAULT);
+        PyramidDetector pyramid = new PyramidDetector(FrameGeometry.DEFAULT, 1);
+        context.pyramid = pyramid;
+        for (int[] data : frames) {
+            Main.detectAll(context, data, Main.DetectionStrategy.DISTRIBUTION);
+        }
+        assertEquals(3 * frames.size(), pyramid.getFullSearches() + pyramid.getRegionSearches());
+    }
+
+}
@@ -0,0 +1,104 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class DistributionTest {
+
+    static BinaryMask randomMask(Random random, int width, int height, double density) {
+        BinaryMask mask = new BinaryMask(width, height);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                mask.set(x, y, random.nextDouble() < density);
+            }
+        }
+        return mask;
+    }
+
+    // The ray casting the sweeps replaced: from every lit pixel walk out in the four directions
+    static int[] castRays(BinaryMask mask, int i, int j) {
+        int width = mask.width;
+        int height = mask.height;
+        int t = j, r = i, b = j, l = i;
+        if (mask.get(i, j)) {
+            while (mask.get(i, t)) {
+                t--;
+                if (t <= 0 || !mask.get(i, t)) {
+                    t++;
+                    break;
+                }
+            }
+            while (mask.get(r, j)) {
+                r++;
+                if (r >= width - 1 || !mask.get(r, j)) {
+                    r--;
+                    break;
+                }
+            }
+            while (mask.get(i, b)) {
+                b++;
+                if (b >= height - 1 || !mask.get(i, b)) {
+                    b--;
+                    break;
+                }
+            }
+            while (mask.get(l, j)) {
+                l--;
+                if (l <= 0 || !mask.get(l, j)) {
+                    l++;
+                    break;
+                }
+            }
+        }
+        return new int[] {t, r, b, l};
+    }
+
+    static void assertMatchesRays(BinaryMask mask, Distribution distribution) {
+        for (int y = 0; y < mask.height; ++y) {
+            for (int x = 0; x < mask.width; ++x) {
+                int index = y * mask.width + x;
+                int[] rays = castRays(mask, x, y);
+                String at = "(" + x + ", " + y + ") of " + mask.width + "x" + mask.height;
+                assertEquals(rays[0], distribution.top[index], "top " + at);
+                assertEquals(rays[1], distribution.right[index], "right " + at);
+                assertEquals(rays[2], distribution.bottom[index], "bottom " + at);
+                assertEquals(rays[3], distribution.left[index], "left " + at);
+            }
+        }
+    }
+
+    @Test
+    void sweepsMatchRayCasting() {
+        Random random = new Random(8);
+        for (int trial = 0; trial < 60; ++trial) {
+            int width = 3 + random.nextInt(70);
+            int height = 3 + random.nextInt(40);
+            BinaryMask mask = randomMask(random, width, height, 0.3 + 0.6 * random.nextDouble());
+            Distribution distribution = new Distribution(width, height);
+            distribution.compute(mask);
+            assertMatchesRays(mask, distribution);
+        }
+    }
+
+    @Test
+    void updatesMatchAFullSweep() {
+        Random random = new Random(88);
+        for (int trial = 0; trial < 40; ++trial) {
+            int width = 3 + random.nextInt(70);
+            int height = 3 + random.nextInt(40);
+            BinaryMask mask = randomMask(random, width, height, 0.8);
+            Distribution distribution = new Distribution(width, height);
+            distribution.compute(mask);
+            for (int clear = 0; clear < 3; ++clear) {
+                int x0 = random.nextInt(width);
+                int y0 = random.nextInt(height);
+                int x1 = Math.min(width - 1, x0 + random.nextInt(10));
+                int y1 = Math.min(height - 1, y0 + random.nextInt(10));
+                mask.clearRect(x0, y0, x1, y1);
+                distribution.update(mask, x0, y0, x1, y1);
+            }
+            assertMatchesRays(mask, distribution);
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class FrameEngineTest {
+
+    @Test
+    void slowListenerHoldsTheReaderBack() throws Exception {
+        int parallelism = 2;
+        int queueCapacity = 3;
+        int frames = 40;
+        FrameEngine engine = new FrameEngine(FrameGeometry.DEFAULT, parallelism, queueCapacity,
+                Main.Channel.RED, Main.DetectionStrategy.CONNECTED_COMPONENTS);
+        AtomicInteger read = new AtomicInteger();
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        int processed = engine.run(data -> read.get() < frames && read.incrementAndGet() > 0, (frame, rects) -> {
+            assertEquals(delivered.get(), frame);
+            maxAhead.accumulateAndGet(read.get() - frame, Math::max);
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.incrementAndGet();
+        });
+        assertEquals(frames, processed);
+        // the frame being delivered holds one of the pool's buffers too
+        assertTrue(maxAhead.get() <= queueCapacity + parallelism, "reader ran " + maxAhead.get() + " frames ahead");
+    }
+
+}
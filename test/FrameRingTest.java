@@ -0,0 +1,123 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FrameRingTest {
+
+    static final FrameGeometry GEOMETRY = new FrameGeometry(8, 8);
+
+    @TempDir
+    File directory;
+
+    static int[] frame(long sequence) {
+        int[] data = new int[GEOMETRY.getFrameSize()];
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (int) ((sequence * 31 + i) & 0xFF);
+        }
+        return data;
+    }
+
+    static boolean holds(byte[] bytes, long sequence) {
+        for (int i = 0; i < bytes.length; ++i) {
+            if ((bytes[i] & 0xFF) != ((sequence * 31 + i) & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    void slowConsumerDropsOverwrittenFrames() throws IOException {
+        File file = new File(directory, "ring");
+        try (FrameRing producer = FrameRing.create(file, GEOMETRY, 2);
+             FrameRing consumer = FrameRing.open(file)) {
+            for (int sequence = 0; sequence < 5; ++sequence) {
+                producer.publish(frame(sequence));
+            }
+            producer.finish();
+            List<Long> consumed = new ArrayList<>();
+            long sequence;
+            while ((sequence = consumer.next()) >= 0) {
+                ByteBuffer slot = consumer.frame(sequence);
+                byte[] bytes = new byte[slot.remaining()];
+                slot.get(bytes);
+                assertTrue(consumer.isValid(sequence));
+                assertTrue(holds(bytes, sequence), "frame " + sequence);
+                consumed.add(sequence);
+            }
+            // frame 3 is in the slot the producer writes next, so it counts as dropped too
+            assertEquals(List.of(4L), consumed);
+            assertEquals(4, consumer.getDropped());
+        }
+    }
+
+    // Every published frame is either read whole by exactly one consumer or counted as dropped
+    @Test
+    void everyFrameIsConsumedOrDropped() throws Exception {
+        File file = new File(directory, "ring");
+        int frames = 5000;
+        int consumers = 3;
+        Set<Long> consumed = ConcurrentHashMap.newKeySet();
+        AtomicLong duplicates = new AtomicLong();
+        AtomicLong torn = new AtomicLong();
+        AtomicLong dropped = new AtomicLong();
+        try (FrameRing producer = FrameRing.create(file, GEOMETRY, 4)) {
+            List<Thread> threads = new ArrayList<>();
+            for (int c = 0; c < consumers; ++c) {
+                int index = c;
+                Thread thread = new Thread(() -> {
+                    try (FrameRing ring = FrameRing.open(file)) {
+                        byte[] bytes = new byte[GEOMETRY.getFrameSize()];
+                        long sequence;
+                        while ((sequence = ring.next()) >= 0) {
+                            ByteBuffer slot = ring.frame(sequence);
+                            if (slot == null) {
+                                continue;
+                            }
+                            slot.get(bytes);
+                            if (index == 0) {
+                                // one slow consumer, so frames get overwritten under it
+                                Thread.yield();
+                            }
+                            if (!ring.isValid(sequence)) {
+                                continue;
+                            }
+                            if (!holds(bytes, sequence)) {
+                                torn.incrementAndGet();
+                            }
+                            if (!consumed.add(sequence)) {
+                                duplicates.incrementAndGet();
+                            }
+                        }
+                        dropped.addAndGet(ring.getDropped());
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (int sequence = 0; sequence < frames; ++sequence) {
+                producer.publish(frame(sequence));
+            }
+            producer.finish();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        assertEquals(0, torn.get(), "frames read torn but valid");
+        assertEquals(0, duplicates.get(), "frames read twice");
+        assertEquals(frames, consumed.size() + dropped.get(), consumed.size() + " consumed " + dropped + " dropped");
+    }
+
+}
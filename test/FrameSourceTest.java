@@ -0,0 +1,92 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FrameSourceTest {
+
+    static final FrameGeometry GEOMETRY = new FrameGeometry(5, 4);
+
+    @TempDir
+    File directory;
+
+    static int[][] frames(Random random, int count) {
+        int[][] frames = new int[count][GEOMETRY.getFrameSize()];
+        for (int[] frame : frames) {
+            for (int i = 0; i < frame.length; ++i) {
+                frame[i] = random.nextInt(256);
+            }
+        }
+        return frames;
+    }
+
+    File convert(int[][] frames) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int[] frame : frames) {
+            for (int value : frame) {
+                text.append(value).append(' ');
+            }
+            text.append('\n');
+        }
+        File file = new File(directory, "record.r565");
+        int converted = FrameSource.convert(new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.US_ASCII)),
+                file, GEOMETRY.width, GEOMETRY.height);
+        assertEquals(frames.length, converted);
+        return file;
+    }
+
+    @Test
+    void readsBackConvertedFrames() throws IOException {
+        int[][] frames = frames(new Random(1), 7);
+        try (FrameSource source = new FrameSource(convert(frames))) {
+            assertEquals(GEOMETRY, source.getGeometry());
+            assertEquals(frames.length, source.getFrameCount());
+            int[] data = new int[GEOMETRY.getFrameSize()];
+            FrameReader reader = source.reader();
+            for (int[] frame : frames) {
+                assertTrue(reader.nextFrame(data));
+                assertArrayEquals(frame, data);
+            }
+            assertFalse(reader.nextFrame(data));
+        }
+    }
+
+    @Test
+    void rejectsInvalidGeometries() throws IOException {
+        File file = convert(frames(new Random(2), 3));
+        // a frame size that overflows an int, to a negative and to a small positive value
+        assertCorrupt(file, 65536, 65536);
+        assertCorrupt(file, 65536, 32769);
+        assertCorrupt(file, 0, 4);
+        assertCorrupt(file, 5, -4);
+        for (int[] geometry : new int[][] {{65536, 65536}, {65536, 32769}, {0, 4}, {5, -4}}) {
+            assertThrows(IOException.class, () -> FrameSource.convert(new ByteArrayInputStream(new byte[0]),
+                    new File(directory, "out.r565"), geometry[0], geometry[1]));
+        }
+    }
+
+    // Overwrites width and height in a copy of file and expects the copy to be rejected
+    void assertCorrupt(File file, int width, int height) throws IOException {
+        File corrupt = new File(directory, "corrupt.r565");
+        Files.copy(file.toPath(), corrupt.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try (RandomAccessFile access = new RandomAccessFile(corrupt, "rw")) {
+            access.seek(4);
+            access.writeInt(width);
+            access.writeInt(height);
+        }
+        assertThrows(IOException.class, () -> new FrameSource(corrupt).close(), width + "x" + height);
+    }
+
+}
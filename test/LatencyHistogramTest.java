@@ -0,0 +1,158 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    static final double[] PERCENTILES = {0, 1, 10, 50, 90, 99, 99.9, 100};
+
+    // Latencies spread evenly over the powers of two up to 2^40 ns
+    static long[] latencies(Random random, int count) {
+        long[] values = new long[count];
+        for (int i = 0; i < count; ++i) {
+            int exponent = random.nextInt(41);
+            values[i] = exponent == 0 ? random.nextInt(2) : (1L << exponent) + (random.nextLong() >>> (64 - exponent));
+        }
+        return values;
+    }
+
+    static void assertPercentiles(long[] values, LatencyHistogram.Snapshot snapshot) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        assertEquals(sorted.length, snapshot.count);
+        assertEquals(sorted[0], snapshot.min);
+        assertEquals(sorted[sorted.length - 1], snapshot.max);
+        for (double percentile : PERCENTILES) {
+            long exact = sorted[(int) Math.max(0, Math.ceil(percentile / 100.0 * sorted.length) - 1)];
+            long value = snapshot.getValueAtPercentile(percentile);
+            // the highest value of the exact value's bucket, so never below it and at most a bucket above
+            assertTrue(value >= exact, percentile + "%: " + value + " below " + exact);
+            assertTrue(LatencyHistogram.index(value) - LatencyHistogram.index(exact) <= 1,
+                    percentile + "%: " + value + " more than a bucket above " + exact);
+            assertTrue(value - exact <= Math.max(0, exact / 32), percentile + "%: " + value + " for " + exact);
+        }
+    }
+
+    @Test
+    void bucketsAroundEveryPowerOfTwo() {
+        for (long value = 0; value < 32; ++value) {
+            assertEquals(value, LatencyHistogram.index(value));
+            assertEquals(value, LatencyHistogram.highestValue((int) value));
+        }
+        for (int exponent = 5; exponent < 63; ++exponent) {
+            long power = 1L << exponent;
+            int index = LatencyHistogram.index(power);
+            assertEquals(index - 1, LatencyHistogram.index(power - 1), "2^" + exponent);
+            assertEquals(power - 1, LatencyHistogram.highestValue(index - 1), "2^" + exponent);
+            // 32 buckets of equal width between one power of two and the next
+            long width = power >>> 5;
+            for (int sub = 0; sub < 32; ++sub) {
+                long lowest = power + sub * width;
+                assertEquals(index + sub, LatencyHistogram.index(lowest), "2^" + exponent + " sub " + sub);
+                assertEquals(index + sub, LatencyHistogram.index(lowest + width - 1), "2^" + exponent + " sub " + sub);
+                assertEquals(lowest + width - 1, LatencyHistogram.highestValue(index + sub));
+            }
+        }
+        assertEquals(LatencyHistogram.index(Long.MAX_VALUE), LatencyHistogram.index(Long.MAX_VALUE - (1L << 57) + 1));
+    }
+
+    @Test
+    void percentilesWithinABucketOfTheExactOnes() {
+        Random random = new Random(19);
+        for (int count : new int[] {1, 2, 7, 100, 10000}) {
+            long[] values = latencies(random, count);
+            LatencyHistogram histogram = new LatencyHistogram();
+            for (long value : values) {
+                histogram.record(value);
+            }
+            assertPercentiles(values, histogram.snapshot());
+            double mean = Arrays.stream(values).average().getAsDouble();
+            assertEquals(mean, histogram.snapshot().mean, mean * 1e-9);
+        }
+    }
+
+    @Test
+    void mergeAndReset() {
+        Random random = new Random(1919);
+        long[] first = latencies(random, 500);
+        long[] second = latencies(random, 300);
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram other = new LatencyHistogram();
+        for (long value : first) {
+            histogram.record(value);
+        }
+        for (long value : second) {
+            other.record(value);
+        }
+        histogram.merge(other);
+        long[] both = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        assertPercentiles(both, histogram.snapshot());
+        assertEquals(second.length, other.snapshot().count);
+        // merging an empty histogram changes nothing
+        histogram.merge(new LatencyHistogram());
+        assertPercentiles(both, histogram.snapshot());
+        histogram.reset();
+        LatencyHistogram.Snapshot empty = histogram.snapshot();
+        assertEquals(0, empty.count);
+        assertEquals(0, empty.min);
+        assertEquals(0, empty.max);
+        assertEquals(0, empty.getValueAtPercentile(50));
+        // the minimum starts over too
+        histogram.record(1000);
+        histogram.record(3000);
+        assertPercentiles(new long[] {1000, 3000}, histogram.snapshot());
+    }
+
+    @Test
+    void pipelineMetricsCountEveryStageOncePerFrame() throws IOException {
+        List<int[]> frames = DetectAllTest.record2();
+        PipelineMetrics metrics = new PipelineMetrics();
+        DetectionContext context = new DetectionContext(FrameGeometry.DEFAULT);
+        context.metrics = metrics;
+        long rects = 0;
+        long start = System.nanoTime();
+        for (int[] frame : frames) {
+            rects += Main.detect(context, frame, Main.Channel.RED, Main.DetectionStrategy.DISTRIBUTION).size();
+        }
+        long elapsed = System.nanoTime() - start;
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(frames.size(), snapshot.frames);
+        assertEquals(rects, snapshot.detections);
+        assertEquals(0, snapshot.drops);
+        double total = 0;
+        for (PipelineMetrics.Stage stage : PipelineMetrics.Stage.values()) {
+            LatencyHistogram.Snapshot histogram = snapshot.stages.get(stage);
+            long expected = stage == PipelineMetrics.Stage.LOCALIZATION ? 0 : frames.size();
+            assertEquals(expected, histogram.count, stage.label);
+            total += histogram.mean * histogram.count;
+        }
+        // the stages are timed one after the other inside the loop
+        assertTrue(total <= elapsed, total + " ns of stages in " + elapsed + " ns");
+
+        // the tiled pass is recorded under granularity only, detectAll counts every frame once
+        metrics.reset();
+        context.tiles = new TiledExecutor(ForkJoinPool.commonPool(), 8);
+        for (int[] frame : frames) {
+            Main.detect(context, frame, Main.Channel.RED, Main.DetectionStrategy.CONNECTED_COMPONENTS);
+            Main.detectAll(context, frame, Main.DetectionStrategy.CONNECTED_COMPONENTS);
+        }
+        metrics.drop();
+        snapshot = metrics.snapshot();
+        assertEquals(2L * frames.size(), snapshot.frames);
+        assertEquals(1, snapshot.drops);
+        assertEquals(2L * frames.size(), snapshot.stages.get(PipelineMetrics.Stage.DECODE).count);
+        assertEquals(frames.size(), snapshot.stages.get(PipelineMetrics.Stage.MEDIAN).count);
+        assertEquals(frames.size(), snapshot.stages.get(PipelineMetrics.Stage.BINARY).count);
+        assertEquals(2L * frames.size(), snapshot.stages.get(PipelineMetrics.Stage.GRANULARITY).count);
+        assertEquals(0, snapshot.stages.get(PipelineMetrics.Stage.DISTRIBUTION).count);
+        assertEquals(4L * frames.size(), snapshot.stages.get(PipelineMetrics.Stage.DETECTION).count);
+    }
+
+}
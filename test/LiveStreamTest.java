@@ -0,0 +1,133 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class LiveStreamTest {
+
+    static final FrameGeometry GEOMETRY = new FrameGeometry(16, 16);
+    // long enough that no frame is ever stale or late, so only the policy drops frames
+    static final long DEADLINE_MILLIS = 60_000;
+
+    // The test hands out frames one by one and the listener blocks on each frame until released,
+    // so it is known exactly which frames arrive while the detector is busy
+    static class Harness {
+
+        final LiveStream stream;
+        final PipelineMetrics metrics = new PipelineMetrics();
+        final BlockingQueue<Boolean> frames = new LinkedBlockingQueue<>();
+        final Semaphore asked = new Semaphore(0);
+        final Semaphore entered = new Semaphore(0);
+        final Semaphore release = new Semaphore(0);
+        final List<Integer> detected = new CopyOnWriteArrayList<>();
+        final AtomicInteger processed = new AtomicInteger(-1);
+        final Thread thread;
+
+        Harness(LiveStream.DropPolicy policy) {
+            stream = new LiveStream(GEOMETRY, DEADLINE_MILLIS, policy, 1, Main.Channel.RED,
+                    Main.DetectionStrategy.CONNECTED_COMPONENTS);
+            stream.metrics = metrics;
+            FrameReader reader = data -> {
+                asked.release();
+                try {
+                    return frames.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            };
+            thread = new Thread(() -> {
+                try {
+                    processed.set(stream.run(reader, (frame, rects) -> {
+                        detected.add(frame);
+                        entered.release();
+                        release.acquireUninterruptibly();
+                    }));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+        }
+
+        // Sends count frames and waits until the reader has handed all of them over and asks for the next
+        void send(int count) throws InterruptedException {
+            for (int i = 0; i < count; ++i) {
+                assertTrue(asked.tryAcquire(5, TimeUnit.SECONDS));
+                frames.put(true);
+            }
+            assertTrue(asked.tryAcquire(5, TimeUnit.SECONDS));
+            asked.release();
+        }
+
+        // Waits for the detector to reach the listener with its next frame
+        void awaitListener() throws InterruptedException {
+            assertTrue(entered.tryAcquire(5, TimeUnit.SECONDS));
+        }
+
+        void finish() throws InterruptedException {
+            assertTrue(asked.tryAcquire(5, TimeUnit.SECONDS));
+            frames.put(false);
+            release.release(100);
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        }
+
+    }
+
+    @Test
+    void latestOnlyKeepsTheNewestFrame() throws InterruptedException {
+        Harness harness = new Harness(LiveStream.DropPolicy.LATEST_ONLY);
+        harness.send(1);
+        harness.awaitListener();
+        // frames 1, 2 and 3 arrive while frame 0 is in the listener, 3 replaces 2 replaces 1
+        harness.send(3);
+        assertEquals(2, harness.stream.getDropped());
+        harness.release.release();
+        harness.awaitListener();
+        harness.send(1);
+        harness.release.release();
+        harness.awaitListener();
+        harness.finish();
+        assertEquals(List.of(0, 3, 4), harness.detected);
+        assertEquals(3, harness.processed.get());
+        assertEquals(5, harness.stream.getReceived());
+        assertEquals(2, harness.stream.getDropped());
+        assertEquals(0, harness.stream.getLate());
+        assertEquals(2, harness.metrics.snapshot().drops);
+        assertEquals(3, harness.metrics.snapshot().frames);
+    }
+
+    @Test
+    void skipKeepsTheWaitingFrameAndDropsNewOnes() throws InterruptedException {
+        Harness harness = new Harness(LiveStream.DropPolicy.SKIP_N);
+        harness.send(1);
+        harness.awaitListener();
+        // frame 1 takes the slot, 2 and 3 find it taken and are dropped
+        harness.send(3);
+        assertEquals(2, harness.stream.getDropped());
+        harness.release.release();
+        harness.awaitListener();
+        // the slot is free again once 1 is taken
+        harness.send(2);
+        assertEquals(3, harness.stream.getDropped());
+        harness.release.release();
+        harness.awaitListener();
+        harness.finish();
+        assertEquals(List.of(0, 1, 4), harness.detected);
+        assertEquals(3, harness.processed.get());
+        assertEquals(6, harness.stream.getReceived());
+        assertEquals(3, harness.stream.getDropped());
+        assertEquals(0, harness.stream.getLate());
+        assertEquals(3, harness.metrics.snapshot().drops);
+    }
+
+}
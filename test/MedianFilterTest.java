@@ -0,0 +1,74 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class MedianFilterTest {
+
+    // Sorts every window, border pixels closer than the radius are copied
+    static PackedImage bruteForce(PackedImage image, int radius) {
+        PackedImage result = new PackedImage(image);
+        int size = (2 * radius + 1) * (2 * radius + 1);
+        int[] reds = new int[size];
+        int[] greens = new int[size];
+        int[] blues = new int[size];
+        for (int y = radius; y < image.height - radius; ++y) {
+            for (int x = radius; x < image.width - radius; ++x) {
+                int n = 0;
+                for (int wy = y - radius; wy <= y + radius; ++wy) {
+                    for (int wx = x - radius; wx <= x + radius; ++wx) {
+                        int pixel = image.pixels[wy * image.width + wx];
+                        reds[n] = PackedImage.red(pixel);
+                        greens[n] = PackedImage.green(pixel);
+                        blues[n] = PackedImage.blue(pixel);
+                        n++;
+                    }
+                }
+                Arrays.sort(reds);
+                Arrays.sort(greens);
+                Arrays.sort(blues);
+                result.pixels[y * image.width + x] = PackedImage.pack(reds[size / 2], greens[size / 2], blues[size / 2]);
+            }
+        }
+        return result;
+    }
+
+    static PackedImage randomImage(Random random, int width, int height, int levels) {
+        PackedImage image = new PackedImage(width, height);
+        for (int i = 0; i < image.pixels.length; ++i) {
+            // few levels give many equal values, the hard case for the running histogram
+            image.pixels[i] = PackedImage.pack(random.nextInt(levels) * 255 / (levels - 1),
+                    random.nextInt(levels) * 255 / (levels - 1), random.nextInt(levels) * 255 / (levels - 1));
+        }
+        return image;
+    }
+
+    @Test
+    void median3x3MatchesSorting() {
+        Random random = new Random(5);
+        for (int trial = 0; trial < 50; ++trial) {
+            int width = 1 + random.nextInt(40);
+            int height = 1 + random.nextInt(40);
+            PackedImage image = randomImage(random, width, height, trial % 2 == 0 ? 4 : 256);
+            PackedImage median = new PackedImage(width, height);
+            MedianFilter.median3x3(image, median);
+            assertArrayEquals(bruteForce(image, 1).pixels, median.pixels, width + "x" + height);
+        }
+    }
+
+    @Test
+    void runningHistogramMatchesSorting() {
+        Random random = new Random(55);
+        for (int trial = 0; trial < 40; ++trial) {
+            int radius = 2 + random.nextInt(3);
+            int width = 1 + random.nextInt(30);
+            int height = 1 + random.nextInt(30);
+            PackedImage image = randomImage(random, width, height, trial % 2 == 0 ? 3 : 256);
+            PackedImage median = new PackedImage(width, height);
+            MedianFilter.median(image, median, radius);
+            assertArrayEquals(bruteForce(image, radius).pixels, median.pixels, width + "x" + height + " radius " + radius);
+        }
+    }
+
+}
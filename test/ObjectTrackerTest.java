@@ -0,0 +1,92 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class ObjectTrackerTest {
+
+    static final FrameGeometry GEOMETRY = new FrameGeometry(96, 64);
+    static final Main.DetectionStrategy STRATEGY = Main.DetectionStrategy.CONNECTED_COMPONENTS;
+
+    // A grey, slightly noisy scene with a red w x h block at (x0, y0), none if w is 0
+    static int[] frame(Random random, int x0, int y0, int w, int h) {
+        int[] data = new int[GEOMETRY.getFrameSize()];
+        for (int i = 0; i < GEOMETRY.getPixelCount(); ++i) {
+            int grey = 40 + random.nextInt(40);
+            AdaptiveThresholdTest.put(data, i, grey, grey, grey);
+        }
+        for (int y = y0; y < y0 + h; ++y) {
+            for (int x = x0; x < x0 + w; ++x) {
+                AdaptiveThresholdTest.put(data, y * GEOMETRY.width + x, 248, 16, 16);
+            }
+        }
+        return data;
+    }
+
+    // Tracks the frames and checks every result against a full detection of the same frame
+    static void assertMatchesDetect(ObjectTracker tracker, List<int[]> frames) {
+        DetectionContext tracked = new DetectionContext(GEOMETRY);
+        DetectionContext full = new DetectionContext(GEOMETRY);
+        for (int frame = 0; frame < frames.size(); ++frame) {
+            List<Main.Rect> rects = tracker.track(tracked, frames.get(frame), Main.Channel.RED, STRATEGY);
+            List<Main.Rect> expected = Main.detect(full, frames.get(frame), Main.Channel.RED, STRATEGY);
+            assertEquals(DetectAllTest.describe(expected), DetectAllTest.describe(rects), "frame " + frame);
+        }
+    }
+
+    static List<int[]> moving(Random random, int frames, int step) {
+        List<int[]> list = new ArrayList<>();
+        for (int frame = 0; frame < frames; ++frame) {
+            list.add(frame(random, 4 + step * frame, 20 + frame / 2, 10, 8));
+        }
+        return list;
+    }
+
+    @Test
+    void followsAMovingBlobInItsRegion() {
+        ObjectTracker tracker = new ObjectTracker(100, ObjectTracker.DEFAULT_MARGIN);
+        assertMatchesDetect(tracker, moving(new Random(16), 30, 2));
+        // one full detection to find the blob, the region search for the rest
+        assertEquals(1, tracker.getFullDetections());
+        assertEquals(29, tracker.getTrackedFrames());
+        assertEquals(1, tracker.getTracks().size());
+    }
+
+    @Test
+    void marginGrowsWithTheVelocity() {
+        // the blob moves further per frame than the margin, only the first prediction misses it
+        ObjectTracker tracker = new ObjectTracker(100, 2);
+        assertMatchesDetect(tracker, moving(new Random(161), 12, 6));
+        assertEquals(2, tracker.getFullDetections());
+        assertEquals(10, tracker.getTrackedFrames());
+        assertTrue(tracker.getTracks().get(0).vx > 2);
+    }
+
+    @Test
+    void vanishingBlobFallsBackToFullDetection() {
+        Random random = new Random(162);
+        List<int[]> frames = moving(random, 6, 2);
+        for (int frame = 0; frame < 4; ++frame) {
+            frames.add(frame(random, 0, 0, 0, 0));
+        }
+        ObjectTracker tracker = new ObjectTracker(100, ObjectTracker.DEFAULT_MARGIN);
+        assertMatchesDetect(tracker, frames);
+        // the region search finds nothing and the whole frame is searched, with no tracks left
+        // every frame after that is searched whole
+        assertEquals(1 + 4, tracker.getFullDetections());
+        assertEquals(5, tracker.getTrackedFrames());
+        assertTrue(tracker.getTracks().isEmpty());
+    }
+
+    @Test
+    void redetectsEveryInterval() {
+        ObjectTracker tracker = new ObjectTracker(5, ObjectTracker.DEFAULT_MARGIN);
+        assertMatchesDetect(tracker, moving(new Random(163), 20, 1));
+        assertEquals(4, tracker.getFullDetections());
+        assertEquals(16, tracker.getTrackedFrames());
+    }
+
+}
@@ -0,0 +1,41 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PyramidDetectorTest {
+
+    static void fill(BinaryMask mask, int x0, int y0, int x1, int y1) {
+        for (int y = y0; y <= y1; ++y) {
+            for (int x = x0; x <= x1; ++x) {
+                mask.set(x, y, true);
+            }
+        }
+    }
+
+    // Two objects six pixels apart, the crop of the first one ends just inside the second
+    @Test
+    void ignoresObjectsCutByTheCrop() {
+        FrameGeometry geometry = new FrameGeometry(320, 320);
+        DetectionContext context = new DetectionContext(geometry);
+        PyramidDetector pyramid = new PyramidDetector(geometry, 2);
+        BinaryMask mask = new BinaryMask(geometry.width, geometry.height);
+        for (int run = 0; run < 50; ++run) {
+            mask.clear();
+            fill(mask, 10, 100, 70, 139);
+            fill(mask, 76, 100, 115, 139);
+            List<Main.Rect> rects = pyramid.detectRects(context, mask, Main.DetectionStrategy.DISTRIBUTION);
+            assertEquals(0, pyramid.getFullSearches());
+            for (Main.Rect rect : rects) {
+                String found = "[x=" + rect.x + " y=" + rect.y + " w=" + rect.w + " h=" + rect.h + "]";
+                // every rect lies within one of the objects and covers most of its width
+                boolean first = rect.x - rect.w / 2 >= 10 && rect.x - rect.w / 2 + rect.w <= 70;
+                boolean second = rect.x - rect.w / 2 >= 76 && rect.x - rect.w / 2 + rect.w <= 115;
+                assertTrue(first || second, found);
+                assertTrue(rect.w >= (first ? 50 : 30), found);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class RecordTokenizerTest {
+
+    // Hands out at most one byte per read and nothing on every other read, as a non-blocking channel may
+    static class TrickleChannel implements ReadableByteChannel {
+
+        private final byte[] bytes;
+        private int position;
+        private boolean empty;
+
+        TrickleChannel(String text) {
+            this.bytes = text.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) {
+            if (position == bytes.length) {
+                return -1;
+            }
+            empty = !empty;
+            if (empty) {
+                return 0;
+            }
+            buffer.put(bytes[position++]);
+            return 1;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    static RecordTokenizer tokenizer(String text) {
+        return new RecordTokenizer(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void readsFramesAcrossWhitespace() throws IOException {
+        RecordTokenizer tokenizer = tokenizer("0 1\n255\t7\r\n 8 9 10");
+        int[] frame = new int[3];
+        assertTrue(tokenizer.nextFrame(frame));
+        assertArrayEquals(new int[] {0, 1, 255}, frame);
+        assertTrue(tokenizer.nextFrame(frame));
+        assertArrayEquals(new int[] {7, 8, 9}, frame);
+        // a trailing partial frame is dropped
+        assertFalse(tokenizer.nextFrame(frame));
+    }
+
+    @Test
+    void rejectsValuesAboveAByte() {
+        assertThrows(IOException.class, () -> tokenizer("1 256 3").nextFrame(new int[3]));
+        assertThrows(IOException.class, () -> tokenizer("99999999999999999999 0 0").nextFrame(new int[3]));
+        assertThrows(IOException.class, () -> tokenizer("1 -2 3").nextFrame(new int[3]));
+    }
+
+    @Test
+    void waitsOnChannelsThatReturnNothing() throws IOException {
+        RecordTokenizer tokenizer = new RecordTokenizer(new TrickleChannel("12 34 56 78"), 4);
+        int[] frame = new int[2];
+        assertTrue(tokenizer.nextFrame(frame));
+        assertArrayEquals(new int[] {12, 34}, frame);
+        assertTrue(tokenizer.nextFrame(frame));
+        assertArrayEquals(new int[] {56, 78}, frame);
+        assertFalse(tokenizer.nextFrame(frame));
+    }
+
+}
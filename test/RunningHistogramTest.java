@@ -0,0 +1,106 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class RunningHistogramTest {
+
+    static final FrameGeometry GEOMETRY = new FrameGeometry(10, 10);
+
+    // Three quarters of the pixels set to one colour and the rest black, all exact in RGB565
+    static int[] scene(int r, int g, int b) {
+        int[] data = new int[GEOMETRY.getFrameSize()];
+        for (int i = 0; i < GEOMETRY.getPixelCount(); ++i) {
+            if (i % 4 != 0) {
+                AdaptiveThresholdTest.put(data, i, r, g, b);
+            }
+        }
+        return data;
+    }
+
+    static ByteBuffer bytes(int[] data) {
+        ByteBuffer bytes = ByteBuffer.allocate(data.length);
+        for (int value : data) {
+            bytes.put((byte) value);
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    static void assertSameCounts(ColorHistogram expected, ColorHistogram histogram, String message) {
+        assertEquals(expected.getPixelCount(), histogram.getPixelCount(), message);
+        for (int c = 0; c < 3; ++c) {
+            assertArrayEquals(expected.counts[c], histogram.counts[c], message + " channel " + c);
+        }
+    }
+
+    @Test
+    void thresholdsOfAKnownTintedScene() {
+        RunningHistogram recording = new RunningHistogram();
+        ColorHistogram histogram = new ColorHistogram();
+        // 75 pixels of (160, 64, 32): means 120, 48 and 24, so the red cast is 240 - 48 - 24 = 168
+        // and the green and blue casts are negative
+        histogram.fillRaw(scene(160, 64, 32));
+        recording.add(histogram);
+        assertEquals(100, recording.getPixelCount());
+        assertEquals(75, recording.get(Main.Channel.RED, 160));
+        assertEquals(25, recording.get(Main.Channel.RED, 0));
+        assertEquals(120.0, recording.getMean(Main.Channel.RED));
+        assertEquals(48.0, recording.getMean(Main.Channel.GREEN));
+        assertEquals(24.0, recording.getMean(Main.Channel.BLUE));
+        assertEquals(168.0, recording.getCast(Main.Channel.RED));
+        assertEquals(30 + 168, recording.getThreshold(Main.Channel.RED));
+        assertEquals(40, recording.getThreshold(Main.Channel.GREEN));
+        assertEquals(40, recording.getThreshold(Main.Channel.BLUE));
+        // then 75 pixels of (0, 0, 200): over both frames the means are 60, 24 and 87,
+        // the red cast drops to 120 - 24 - 87 = 9 and the blue one is 174 - 60 - 24 = 90
+        histogram.fillRaw(scene(0, 0, 200));
+        recording.add(histogram);
+        assertEquals(2, recording.getFrameCount());
+        assertEquals(87.0, recording.getMean(Main.Channel.BLUE));
+        assertEquals(30 + 9, recording.getThreshold(Main.Channel.RED));
+        assertEquals(40, recording.getThreshold(Main.Channel.GREEN));
+        assertEquals(40 + 90, recording.getThreshold(Main.Channel.BLUE));
+        recording.reset();
+        assertEquals(0, recording.getFrameCount());
+        assertEquals(0, recording.getPixelCount());
+        for (Main.Channel channel : Main.Channel.values()) {
+            assertEquals(Main.getThreshold(channel), recording.getThreshold(channel));
+        }
+    }
+
+    @Test
+    void everyWayOfCountingAFrameAgrees() {
+        Random random = new Random(2121);
+        for (int trial = 0; trial < 20; ++trial) {
+            int width = 3 + random.nextInt(50);
+            int height = 3 + random.nextInt(30);
+            int[] data = new int[2 * width * height];
+            for (int i = 0; i < data.length; ++i) {
+                data[i] = random.nextInt(256);
+            }
+            String size = width + "x" + height;
+            ColorHistogram expected = new ColorHistogram();
+            expected.fillRaw(data);
+            ColorHistogram histogram = new ColorHistogram();
+            histogram.fillRaw(bytes(data));
+            assertSameCounts(expected, histogram, "bytes " + size);
+            PackedImage image = new PackedImage(width, height);
+            Main.getImage(data, image);
+            histogram.fill(image);
+            assertSameCounts(expected, histogram, "image " + size);
+            // bands of rows counted on their own and merged, the last band short
+            int bandHeight = 1 + random.nextInt(height);
+            histogram.clear();
+            for (int y0 = 0; y0 < height; y0 += bandHeight) {
+                ColorHistogram band = new ColorHistogram();
+                band.add(image.pixels, y0 * width, (Math.min(height, y0 + bandHeight) - y0) * width);
+                histogram.merge(band);
+            }
+            assertSameCounts(expected, histogram, "bands of " + bandHeight + " " + size);
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class StreamingFrameReaderTest {
+
+    static final FrameGeometry GEOMETRY = new FrameGeometry(4, 3);
+
+    // Numbered frames, data[0] is the frame number
+    static FrameReader counting(int frames, AtomicInteger read) {
+        return data -> {
+            int frame = read.get();
+            if (frame == frames) {
+                return false;
+            }
+            data[0] = frame;
+            read.incrementAndGet();
+            return true;
+        };
+    }
+
+    @Test
+    void readsAllFramesInOrder() throws IOException {
+        AtomicInteger read = new AtomicInteger();
+        try (StreamingFrameReader reader = new StreamingFrameReader(counting(25, read), GEOMETRY, 3)) {
+            int[] data = new int[GEOMETRY.getFrameSize()];
+            for (int frame = 0; frame < 25; ++frame) {
+                assertTrue(reader.nextFrame(data));
+                assertEquals(frame, data[0]);
+            }
+            assertFalse(reader.nextFrame(data));
+            assertFalse(reader.nextFrame(data));
+        }
+    }
+
+    @Test
+    void closeStopsAReaderWaitingForABuffer() throws Exception {
+        AtomicInteger read = new AtomicInteger();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        FrameReader source = counting(Integer.MAX_VALUE, read);
+        StreamingFrameReader reader = new StreamingFrameReader(data -> {
+            interrupted.compareAndSet(false, Thread.currentThread().isInterrupted());
+            return source.nextFrame(data);
+        }, GEOMETRY, 2);
+        int[] data = new int[GEOMETRY.getFrameSize()];
+        assertTrue(reader.nextFrame(data));
+        // the reader fills both buffers and waits for one to come back
+        while (read.get() < 3) {
+            Thread.sleep(1);
+        }
+        reader.close();
+        assertFalse(reader.nextFrame(data));
+        Thread.sleep(20);
+        assertEquals(3, read.get());
+        assertFalse(interrupted.get());
+    }
+
+    @Test
+    void closeWakesAWaitingCaller() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        StreamingFrameReader reader = new StreamingFrameReader(data -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            return true;
+        }, GEOMETRY, 2);
+        CountDownLatch waiting = new CountDownLatch(1);
+        Thread closer = new Thread(() -> {
+            try {
+                waiting.await();
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            reader.close();
+        });
+        closer.start();
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            waiting.countDown();
+            assertFalse(reader.nextFrame(new int[GEOMETRY.getFrameSize()]));
+        });
+        closer.join();
+        release.countDown();
+        assertFalse(interrupted.get());
+    }
+
+}
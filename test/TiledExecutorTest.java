@@ -0,0 +1,96 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+class TiledExecutorTest {
+
+    static final int[] BAND_HEIGHTS = {1, 2, 3, 7, TiledExecutor.DEFAULT_BAND_HEIGHT};
+
+    // Mostly dark with red, green and blue patches, so the masks have both blobs and single pixels
+    static PackedImage patchyImage(Random random, int width, int height) {
+        PackedImage image = BoxFilterTest.randomImage(random, width, height);
+        for (int i = 0; i < image.pixels.length; ++i) {
+            if (random.nextInt(4) != 0) {
+                image.pixels[i] &= 0x3F3F3F;
+            }
+        }
+        int[] colors = {0xF01010, 0x10F010, 0x1010F0};
+        for (int patch = 0; patch < 6; ++patch) {
+            int x0 = random.nextInt(width);
+            int y0 = random.nextInt(height);
+            int color = colors[random.nextInt(colors.length)];
+            for (int y = y0; y < Math.min(height, y0 + 1 + random.nextInt(8)); ++y) {
+                for (int x = x0; x < Math.min(width, x0 + 1 + random.nextInt(12)); ++x) {
+                    image.pixels[y * width + x] = color;
+                }
+            }
+        }
+        return image;
+    }
+
+    static void assertMatchesSequential(Random random, int width, int height, int bandHeight) {
+        String size = width + "x" + height + " band height " + bandHeight;
+        TiledExecutor tiles = new TiledExecutor(ForkJoinPool.commonPool(), bandHeight);
+        PackedImage image = patchyImage(random, width, height);
+        PackedImage medianImage = new PackedImage(width, height);
+        PackedImage expectedMedian = new PackedImage(width, height);
+        tiles.median(image, medianImage);
+        Main.getMedianImage(image, expectedMedian);
+        assertArrayEquals(expectedMedian.pixels, medianImage.pixels, "median " + size);
+        BinaryMask[] masks = new BinaryMask[3];
+        BinaryMask[] granularity = new BinaryMask[3];
+        BinaryMask[] expected = new BinaryMask[3];
+        for (Main.Channel channel : Main.Channel.values()) {
+            int c = channel.ordinal();
+            masks[c] = new BinaryMask(width, height);
+            granularity[c] = new BinaryMask(width, height);
+            expected[c] = new BinaryMask(width, height);
+            Main.getBinaryMask(expectedMedian, channel, masks[c]);
+            tiles.granularity(masks[c], granularity[c]);
+            Main.granularityFilter(masks[c], expected[c]);
+            assertArrayEquals(expected[c].bits, granularity[c].bits, "granularity " + channel + " " + size);
+            BinaryMask fused = new BinaryMask(width, height);
+            tiles.fused(image, channel, fused);
+            assertArrayEquals(expected[c].bits, fused.bits, "fused " + channel + " " + size);
+            // a threshold other than the fixed one goes through the same rows
+            int threshold = Main.getThreshold(channel) + 1 + random.nextInt(40);
+            BinaryMask mask = new BinaryMask(width, height);
+            Main.getBinaryMask(expectedMedian, channel, threshold, mask);
+            Main.granularityFilter(mask, expected[c]);
+            tiles.fused(image, channel, threshold, fused);
+            assertArrayEquals(expected[c].bits, fused.bits, "fused threshold " + threshold + " " + channel + " " + size);
+        }
+        BinaryMask[] all = new BinaryMask[3];
+        for (int c = 0; c < 3; ++c) {
+            all[c] = new BinaryMask(width, height);
+            Main.granularityFilter(masks[c], expected[c]);
+        }
+        tiles.granularity(masks, all);
+        for (int c = 0; c < 3; ++c) {
+            assertArrayEquals(expected[c].bits, all[c].bits, "granularity of all channels " + c + " " + size);
+        }
+    }
+
+    @Test
+    void matchesSequentialChainOnHeightsAroundTheBand() {
+        Random random = new Random(12);
+        for (int bandHeight : BAND_HEIGHTS) {
+            // heights below, at and past a multiple of the band, so the last band is short
+            for (int height = 3; height <= 3 * bandHeight + 2 && height <= 40; ++height) {
+                assertMatchesSequential(random, 3 + random.nextInt(140), height, bandHeight);
+            }
+        }
+    }
+
+    @Test
+    void matchesSequentialChainOnRandomSizes() {
+        Random random = new Random(1212);
+        for (int trial = 0; trial < 30; ++trial) {
+            int bandHeight = BAND_HEIGHTS[random.nextInt(BAND_HEIGHTS.length)];
+            assertMatchesSequential(random, 3 + random.nextInt(300), 3 + random.nextInt(150), bandHeight);
+        }
+    }
+
+}